@@ -0,0 +1,416 @@
+/*
+ * BatchPlanarity.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class tests many graphs in one JVM, spread over a fixed pool of
+ * worker threads.  The graphs come from the files in a directory, from
+ * a manifest listing one file per line, or from a graph6/sparse6 stream.
+ * Files may be text edge lists or BinaryGraphFormat files.
+ *
+ * At most a few graphs per worker are in flight at once, so a stream of
+ * any length is read no faster than it is tested.  Each result is printed
+ * as "name<TAB>planar" (or nonplanar, or the error), either in input
+ * order or as soon as it is ready, and a summary with the number of
+ * graphs per second is printed to standard error at the end.  If a
+ * graph6 stream holds a malformed line, the graphs before it are still
+ * printed, and the summary too, before the run exits with status 1.
+ * Every worker keeps its own EdgeList for loading, reused from file to
+ * file.
+ *
+ * With -cache, the results are kept in a ResultCache of the given size,
+ * so that a graph that comes again, in any edge order and, unless
+ * -fingerprint edges is given, mostly under other labels too, is not
+ * tested again;
+ * -cachefile also keeps them in a file for later runs.  The summary then
+ * also gives the hits and misses.  Run with -Dplanarity.metrics=true, it
+ * is followed by the summary of PlanarityMetrics.
+ *
+ * Usage: java BatchPlanarity [-engine pieces|parallel|lr] [-threads n]
+ *		[-order input|completion] [-cache entries] [-cachefile file]
+ *		[-fingerprint edges|relabel]
+ *		(-dir directory | -manifest file | -graph6 file|-)
+ *
+ * @author Matthew McCarty
+ */
+
+public class BatchPlanarity {
+
+    /**
+     * The number of graphs kept in flight for every worker.
+     */
+    static final int IN_FLIGHT_PER_THREAD = 4;
+
+    private final TestPlanarity.Engine engine;
+    private final ExecutorService workers;
+    private final int maxInFlight;
+    private final boolean inputOrder;
+    private final PrintWriter output;
+    private final ResultCache cache;
+    private final ThreadLocal<EdgeList> edges = new ThreadLocal<EdgeList>() {
+	protected EdgeList initialValue() {
+	    return new EdgeList();
+	}
+    };
+
+    private final ArrayDeque<Future<String>> pending =
+	new ArrayDeque<Future<String>>();
+    private final ExecutorCompletionService<String> completion;
+    private int inFlight;
+    private long graphs;
+    private long planar;
+    private long errors;
+
+    /**
+     * Creates a batch run.
+     *
+     * @param engine	The engine to test every graph with
+     * @param threads	The number of worker threads
+     * @param inputOrder	True to print the results in input order,
+     * 				false to print them as they complete
+     * @param output	Where to print the results
+     */
+    public BatchPlanarity(TestPlanarity.Engine engine, int threads,
+			  boolean inputOrder, PrintWriter output) {
+	this(engine, threads, inputOrder, output, null);
+    }
+
+    /**
+     * Creates a batch run that looks every graph up in a cache first.
+     *
+     * @param engine	The engine to test every graph with
+     * @param threads	The number of worker threads
+     * @param inputOrder	True to print the results in input order,
+     * 				false to print them as they complete
+     * @param output	Where to print the results
+     * @param cache	The cache, or null for none
+     */
+    public BatchPlanarity(TestPlanarity.Engine engine, int threads,
+			  boolean inputOrder, PrintWriter output,
+			  ResultCache cache) {
+	this.engine = engine;
+	this.cache = cache;
+	this.workers = Executors.newFixedThreadPool(threads);
+	this.maxInFlight = IN_FLIGHT_PER_THREAD * threads;
+	this.inputOrder = inputOrder;
+	this.output = output;
+	this.completion = new ExecutorCompletionService<String>(workers);
+    }
+
+    /**
+     * Runs a batch from the command line.
+     *
+     * @param args	The options and the input, as in the usage above
+     */
+    public static void main(String[] args) {
+	TestPlanarity.Engine engine = TestPlanarity.Engine.LEFT_RIGHT;
+	int threads = Runtime.getRuntime().availableProcessors();
+	boolean inputOrder = true;
+	String mode = null;
+	String source = null;
+	int cacheSize = 0;
+	String cacheFile = null;
+	boolean relabel = true;
+	PrintWriter output = new PrintWriter(
+	    new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+
+	try {
+	    for(int i = 0; i < args.length; ++i) {
+		if(args[i].equals("-engine") && i + 1 < args.length) {
+		    engine = TestPlanarity.ParseEngine(args[++i]);
+		} else if(args[i].equals("-threads") && i + 1 < args.length) {
+		    threads = Integer.parseInt(args[++i]);
+		} else if(args[i].equals("-order") && i + 1 < args.length) {
+		    inputOrder = !args[++i].equals("completion");
+		} else if(args[i].equals("-cache") && i + 1 < args.length) {
+		    cacheSize = Integer.parseInt(args[++i]);
+		} else if(args[i].equals("-cachefile") && i + 1 < args.length) {
+		    cacheFile = args[++i];
+		} else if(args[i].equals("-fingerprint") &&
+			  i + 1 < args.length) {
+		    relabel = !args[++i].equals("edges");
+		} else if((args[i].equals("-dir") ||
+			   args[i].equals("-manifest") ||
+			   args[i].equals("-graph6")) && i + 1 < args.length) {
+		    mode = args[i];
+		    source = args[++i];
+		} else {
+		    throw new Exception("Unknown option: " + args[i]);
+		}
+	    }
+	    if(mode == null || threads < 1) {
+		throw new Exception(
+		    "Usage: java BatchPlanarity [-engine pieces|parallel|lr]"
+		    + " [-threads n] [-order input|completion]"
+		    + " [-cache entries] [-cachefile file]"
+		    + " [-fingerprint edges|relabel]"
+		    + " (-dir directory | -manifest file | -graph6 file|-)");
+	    }
+
+	    ResultCache cache = cacheSize > 0 || cacheFile != null
+		? new ResultCache(Math.max(cacheSize, 1), relabel, cacheFile)
+		: null;
+	    BatchPlanarity batch =
+		new BatchPlanarity(engine, threads, inputOrder, output, cache);
+	    long start = System.nanoTime();
+	    IOException failure = null;
+	    try {
+		if(mode.equals("-dir")) {
+		    batch.runFiles(DirectoryFiles(source));
+		} else if(mode.equals("-manifest")) {
+		    batch.runFiles(ManifestFiles(source));
+		} else {
+		    InputStream input = source.equals("-")
+			? System.in : new FileInputStream(source);
+		    try {
+			batch.runGraph6(input);
+		    } finally {
+			input.close();
+		    }
+		}
+	    } catch(IOException ex) {
+		// Still print the graphs read before the bad input.
+		failure = ex;
+		batch.drain(0);
+	    } finally {
+		batch.shutdown();
+		output.flush();
+		if(cache != null) {
+		    cache.close();
+		}
+	    }
+	    double seconds = (System.nanoTime() - start) / 1e9;
+	    System.err.printf("%d graphs, %d planar, %d errors in %.3f s"
+			      + " (%.1f graphs/s)%n", batch.graphs,
+			      batch.planar, batch.errors, seconds,
+			      batch.graphs / Math.max(seconds, 1e-9));
+	    if(cache != null) {
+		System.err.println(cache);
+	    }
+	    if(PlanarityMetrics.ENABLED) {
+		System.err.print(PlanarityMetrics.Summary());
+	    }
+	    if(failure != null) {
+		throw failure;
+	    }
+	} catch(Exception ex) {
+	    output.flush();
+	    System.err.println(ex.getMessage());
+	    System.exit(1);
+	}
+    }
+
+    /**
+     * Tests the graphs in the given files.
+     *
+     * @param files	The files, in input order
+     * @throws InterruptedException	If interrupted while waiting for a
+     * 					result
+     */
+    public void runFiles(List<String> files) throws InterruptedException {
+	for(final String filename : files) {
+	    submit(new Callable<String>() {
+		    public String call() {
+			try {
+			    return filename + "\t" + test(load(filename));
+			} catch(Throwable ex) {
+			    return Failure(filename, ex);
+			}
+		    }
+		});
+	}
+	drain(0);
+    }
+
+    /**
+     * Tests the graphs of a graph6/sparse6 stream.  They are named by
+     * their position in the stream, starting at 1.
+     *
+     * @param input	The stream
+     * @throws IOException	If the stream cannot be read or holds a
+     * 				malformed line
+     * @throws InterruptedException	If interrupted while waiting for a
+     * 					result
+     */
+    public void runGraph6(InputStream input)
+	throws IOException, InterruptedException {
+	Graph6Reader reader = new Graph6Reader(input);
+	long index = 0;
+	while(reader.next()) {
+	    final CSRGraph graph = reader.edges().toCSRGraph();
+	    final long name = ++index;
+	    submit(new Callable<String>() {
+		    public String call() {
+			try {
+			    return name + "\t" + test(graph);
+			} catch(Throwable ex) {
+			    return Failure(name, ex);
+			}
+		    }
+		});
+	}
+	drain(0);
+    }
+
+    /**
+     * Stops the workers once the submitted graphs are done.
+     */
+    public void shutdown() {
+	workers.shutdown();
+    }
+
+    /**
+     * Loads one file with this worker's edge list.
+     */
+    private CSRGraph load(String filename) throws IOException {
+	if(BinaryGraphFormat.IsBinaryFile(filename)) {
+	    return BinaryGraphFormat.Read(filename);
+	}
+	return EdgeListLoader.Load(filename, edges.get()).toCSRGraph();
+    }
+
+    /**
+     * Tests one graph and returns the word to print for it.
+     */
+    private String test(CSRGraph graph) {
+	boolean planar = cache != null ? cache.isPlanar(graph, engine)
+	    : TestPlanarity.IsPlanar(graph, engine);
+	return planar ? "planar" : "nonplanar";
+    }
+
+    /**
+     * Returns the line to print for a graph whose test failed, naming the
+     * graph so that the line can be told apart from the others.
+     */
+    private static String Failure(Object name, Throwable ex) {
+	String reason = ex instanceof IOException ? ex.getMessage()
+	    : ex instanceof StackOverflowError ? "graph too deep for the stack"
+	    : ex.toString();
+	return name + "\terror: " + reason;
+    }
+
+    /**
+     * Hands a graph to the workers, first waiting for a result if too
+     * many are in flight.
+     */
+    private void submit(Callable<String> task) throws InterruptedException {
+	drain(maxInFlight - 1);
+	if(inputOrder) {
+	    pending.add(workers.submit(task));
+	} else {
+	    completion.submit(task);
+	}
+	++inFlight;
+    }
+
+    /**
+     * Prints the results that are ready to be printed, and waits for more
+     * until at most the given number of graphs are in flight.
+     */
+    private void drain(int limit) throws InterruptedException {
+	while(inFlight > 0) {
+	    boolean wait = inFlight > limit;
+	    Future<String> next;
+	    if(inputOrder) {
+		next = pending.peek();
+		if(!wait && !next.isDone()) {
+		    return;
+		}
+		pending.poll();
+	    } else {
+		next = wait ? completion.take() : completion.poll();
+		if(next == null) {
+		    return;
+		}
+	    }
+	    --inFlight;
+	    print(next);
+	}
+    }
+
+    /**
+     * Prints one result and counts it.
+     */
+    private void print(Future<String> result) throws InterruptedException {
+	String line;
+	try {
+	    line = result.get();
+	} catch(ExecutionException ex) {
+	    line = "?\terror: " + ex.getCause();
+	}
+	++graphs;
+	if(line.endsWith("\tplanar")) {
+	    ++planar;
+	} else if(!line.endsWith("\tnonplanar")) {
+	    ++errors;
+	}
+	output.println(line);
+    }
+
+    /**
+     * Lists the regular files of a directory, sorted by name.
+     */
+    private static List<String> DirectoryFiles(String directory)
+	throws IOException {
+	File[] files = new File(directory).listFiles();
+	if(files == null) {
+	    throw new IOException(directory + ": not a directory");
+	}
+	Arrays.sort(files);
+	List<String> names = new ArrayList<String>();
+	for(File file : files) {
+	    if(file.isFile()) {
+		names.add(file.getPath());
+	    }
+	}
+	return names;
+    }
+
+    /**
+     * Reads a manifest: one file name per line, blank lines and lines
+     * starting with '#' skipped.
+     */
+    private static List<String> ManifestFiles(String manifest)
+	throws IOException {
+	BufferedReader reader = new BufferedReader(new FileReader(manifest));
+	List<String> names = new ArrayList<String>();
+	try {
+	    String line;
+	    while((line = reader.readLine()) != null) {
+		line = line.trim();
+		if(line.length() > 0 && !line.startsWith("#")) {
+		    names.add(line);
+		}
+	    }
+	} finally {
+	    reader.close();
+	}
+	return names;
+    }
+}
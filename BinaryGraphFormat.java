@@ -0,0 +1,226 @@
+/*
+ * BinaryGraphFormat.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class reads and writes graphs in a binary file that holds the
+ * CSRGraph arrays as they are, so that a graph converted once can be
+ * loaded again without parsing any text.  All numbers are little-endian
+ * ints:
+ *
+ *   magic ("PLGR"), version, vertices n, targets length 2m,
+ *   labels[n], offsets[n+1], targets[2m]
+ *
+ * Reading maps the file and copies each section straight into its array
+ * with a bulk get, then checks the arrays with CSRGraph.fromArrays.
+ *
+ * Usage: java BinaryGraphFormat edgelist.txt graph.bin
+ *
+ * @author Matthew McCarty
+ */
+
+public class BinaryGraphFormat {
+
+    /**
+     * The first four bytes of every binary graph file.
+     */
+    public static final int MAGIC = 0x52474c50;
+
+    /**
+     * The version written by this class.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The size of the header in bytes.
+     */
+    static final int HEADER = 16;
+
+    /**
+     * The most bytes mapped or buffered at once.
+     */
+    static final int WINDOW = 1 << 30;
+
+    /**
+     * Converts a text edge list into a binary graph file.
+     *
+     * @param args	The text file and the binary file to write
+     */
+    public static void main(String[] args) {
+	if(args.length != 2) {
+	    System.err.println(
+		"Usage: java BinaryGraphFormat edgelist.txt graph.bin");
+	    System.exit(1);
+	}
+	try {
+	    CSRGraph graph = EdgeListLoader.Load(args[0]).toCSRGraph();
+	    Write(graph, args[1]);
+	    System.out.println(graph.numberOfVertices() + " vertices, " +
+			       graph.numberOfEdges() + " edges");
+	} catch(IOException ex) {
+	    System.err.println(ex.getMessage());
+	    System.exit(1);
+	}
+    }
+
+    /**
+     * Determines whether a file starts with the binary graph magic number.
+     *
+     * @param filename	The name of the file
+     * @return		True if it is a binary graph file
+     * @throws IOException	If the file cannot be read
+     */
+    public static boolean IsBinaryFile(String filename) throws IOException {
+	RandomAccessFile file = new RandomAccessFile(filename, "r");
+	try {
+	    ByteBuffer buffer = ByteBuffer.allocate(4);
+	    buffer.order(ByteOrder.LITTLE_ENDIAN);
+	    return file.getChannel().read(buffer, 0) == 4 &&
+		buffer.getInt(0) == MAGIC;
+	} finally {
+	    file.close();
+	}
+    }
+
+    /**
+     * Reads a graph from a binary graph file.
+     *
+     * @param filename	The name of the file
+     * @return		The graph
+     * @throws IOException	If the file cannot be read, is of another
+     * 				version or is corrupt
+     */
+    public static CSRGraph Read(String filename) throws IOException {
+	RandomAccessFile file = new RandomAccessFile(filename, "r");
+	try {
+	    FileChannel channel = file.getChannel();
+	    if(channel.size() < HEADER) {
+		throw new IOException("Not a binary graph file");
+	    }
+	    int[] header = ReadInts(channel, 0, HEADER / 4);
+	    if(header[0] != MAGIC) {
+		throw new IOException("Not a binary graph file");
+	    }
+	    if(header[1] != VERSION) {
+		throw new IOException("Unsupported binary graph version " +
+				      header[1]);
+	    }
+	    long n = header[2];
+	    long length = header[3];
+	    if(n < 0 || length < 0 ||
+	       channel.size() != HEADER + 4 * (2 * n + 1 + length)) {
+		throw new IOException("Truncated binary graph file");
+	    }
+
+	    long position = HEADER;
+	    int[] labels = ReadInts(channel, position, (int) n);
+	    position += 4 * n;
+	    int[] offsets = ReadInts(channel, position, (int) n + 1);
+	    position += 4 * (n + 1);
+	    int[] targets = ReadInts(channel, position, (int) length);
+
+	    try {
+		return CSRGraph.fromArrays(offsets, targets, labels);
+	    } catch(IllegalArgumentException ex) {
+		throw new IOException("Corrupt binary graph file: " +
+				      ex.getMessage());
+	    }
+	} finally {
+	    file.close();
+	}
+    }
+
+    /**
+     * Writes a graph to a binary graph file.
+     *
+     * @param graph	The graph
+     * @param filename	The name of the file
+     * @throws IOException	If the file cannot be written
+     */
+    public static void Write(CSRGraph graph, String filename)
+	throws IOException {
+	int n = graph.numberOfVertices();
+	RandomAccessFile file = new RandomAccessFile(filename, "rw");
+	try {
+	    FileChannel channel = file.getChannel();
+	    channel.truncate(0);
+	    ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+	    buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+	    buffer.putInt(MAGIC);
+	    buffer.putInt(VERSION);
+	    buffer.putInt(n);
+	    buffer.putInt(2 * graph.numberOfEdges());
+	    for(int vertex = 0; vertex < n; ++vertex) {
+		Put(channel, buffer, graph.label(vertex));
+	    }
+	    for(int vertex = 0; vertex < n; ++vertex) {
+		Put(channel, buffer, graph.edgeStart(vertex));
+	    }
+	    Put(channel, buffer, n > 0 ? graph.edgeEnd(n - 1) : 0);
+	    for(int i = 0; i < 2 * graph.numberOfEdges(); ++i) {
+		Put(channel, buffer, graph.target(i));
+	    }
+	    Flush(channel, buffer);
+	} finally {
+	    file.close();
+	}
+    }
+
+    /**
+     * Reads count ints starting at the given byte position, mapping at
+     * most one window at a time.
+     */
+    private static int[] ReadInts(FileChannel channel, long position,
+				  int count)
+	throws IOException {
+	int[] values = new int[count];
+	int done = 0;
+	while(done < count) {
+	    int length = Math.min(count - done, WINDOW / 4);
+	    IntBuffer ints =
+		channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * length)
+		.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+	    ints.get(values, done, length);
+	    done += length;
+	    position += 4L * length;
+	}
+	return values;
+    }
+
+    /**
+     * Adds an int to the buffer, writing the buffer out when it is full.
+     */
+    private static void Put(FileChannel channel, ByteBuffer buffer, int value)
+	throws IOException {
+	if(buffer.remaining() < 4) {
+	    Flush(channel, buffer);
+	}
+	buffer.putInt(value);
+    }
+
+    /**
+     * Writes out everything in the buffer and empties it.
+     */
+    private static void Flush(FileChannel channel, ByteBuffer buffer)
+	throws IOException {
+	buffer.flip();
+	while(buffer.hasRemaining()) {
+	    channel.write(buffer);
+	}
+	buffer.clear();
+    }
+}
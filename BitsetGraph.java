@@ -0,0 +1,404 @@
+/*
+ * BitsetGraph.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class is a graph stored as an adjacency matrix of bits, one row of
+ * longs per vertex, together with a version of the pieces engine that
+ * works on whole rows at a time.  A set of vertices is a row-sized mask,
+ * so finding the chords of a cycle is a row ANDed with the cycle's mask,
+ * the attachments of a piece are the OR of its rows ANDed with the same
+ * mask, and a component or a breadth-first layer grows by ORing the rows
+ * of its newest vertices, 64 vertices to an operation.
+ *
+ * The matrix costs n * n / 8 bytes, so it only pays off for small or
+ * dense graphs; Suits says whether a graph is one of them.  Since a
+ * planar graph has at most 3n - 6 edges, a dense graph is turned down by
+ * the edge count before any of this runs, and in practice the bitset
+ * engine is used for the small blocks, such as those of the graphs in a
+ * graph6 batch.
+ *
+ * @author Matthew McCarty
+ */
+
+public final class BitsetGraph {
+    private final int n;
+    private final int words;
+    private final long[] rows;
+
+    /**
+     * Builds the adjacency matrix of a CSRGraph.
+     *
+     * @param graph	The given graph
+     */
+    public BitsetGraph(CSRGraph graph) {
+	n = graph.numberOfVertices();
+	words = (n + 63) >>> 6;
+	rows = new long[n * words];
+	for(int v = 0; v < n; ++v) {
+	    for(int k = graph.edgeStart(v); k < graph.edgeEnd(v); ++k) {
+		Set(rows, v * words, graph.target(k));
+	    }
+	}
+    }
+
+    /**
+     * Determines whether a graph is small or dense enough for the bitset
+     * engine: always with 64 vertices or fewer, where a row is one long,
+     * and otherwise when the matrix is no larger than the targets of the
+     * CSRGraph, n * words longs against 2m ints.  Under the 3n - 6 bound
+     * that leaves the graphs of up to 128 vertices with an average degree
+     * of at least 4, which is about where the two engines break even.
+     *
+     * @param graph	The given graph
+     * @return		True if a BitsetGraph should be used
+     */
+    public static boolean Suits(CSRGraph graph) {
+	long n = graph.numberOfVertices();
+	long words = (n + 63) >>> 6;
+	return n <= 64 || n * words <= graph.numberOfEdges();
+    }
+
+    /**
+     * Returns the number of vertices in the graph.
+     *
+     * @return	The number of vertices
+     */
+    public int numberOfVertices() {
+	return n;
+    }
+
+    /**
+     * Returns the number of edges in the graph.
+     *
+     * @return	The number of edges
+     */
+    public int numberOfEdges() {
+	return Count(rows, 0, rows.length) / 2;
+    }
+
+    /**
+     * Returns the number of neighbors of a vertex.
+     *
+     * @param vertex	The vertex in question
+     * @return		Its degree
+     */
+    public int degree(int vertex) {
+	return Count(rows, vertex * words, words);
+    }
+
+    /**
+     * Determines whether an edge exists between two vertices.
+     *
+     * @param vertex1  The first vertex
+     * @param vertex2  The second vertex
+     * @return	       True if an edge exists between the two vertices
+     */
+    public boolean containsEdge(int vertex1, int vertex2) {
+	return Get(rows, vertex1 * words, vertex2);
+    }
+
+    /**
+     * Tests a biconnected graph for planarity with the pieces engine.
+     *
+     * @return	True if planar, false otherwise
+     */
+    public boolean isPlanar() {
+	int m = numberOfEdges();
+	if(m < 9 || m == n) {
+	    return true;
+	}
+	if(3 * n - 6 < m) {
+	    return false;
+	}
+
+	// Any cycle has a piece in a biconnected graph that is not a
+	// cycle: close one through the first two neighbors of vertex 0.
+	int first = Next(rows, 0, words, 0);
+	int second = Next(rows, 0, words, first + 1);
+	long[] allowed = new long[words];
+	for(int v = 1; v < n; ++v) {
+	    Set(allowed, 0, v);
+	}
+	int[] path = Path(rows, words, first, second, allowed, true);
+	int[] cycle = new int[path.length + 1];
+	cycle[0] = 0;
+	System.arraycopy(path, 0, cycle, 1, path.length);
+	if(!PlanarityMetrics.ENABLED) {
+	    return Test(rows, cycle);
+	}
+	PlanarityMetrics.Span span =
+	    PlanarityMetrics.Begin(PlanarityMetrics.Phase.BITSET, -1);
+	boolean planar = Test(rows, cycle);
+	span.end(m);
+	return planar;
+    }
+
+    /**
+     * The pieces engine on the subgraph given by a matrix, with the
+     * given cycle.  The matrix of a piece's subproblem keeps only the
+     * rows of the piece and, for the cycle vertices, the bits of the
+     * piece and of the cycle, so its size does not shrink with the
+     * piece, but the nesting depth is at most the number of vertices.
+     */
+    private boolean Test(long[] rows, int[] cycle) {
+	long[] onCycle = new long[words];
+	int[] position = new int[n];
+	Arrays.fill(position, -1);
+	for(int i = 0; i < cycle.length; ++i) {
+	    Set(onCycle, 0, cycle[i]);
+	    position[cycle[i]] = i;
+	}
+	long[] remaining = new long[words];
+	int vertexCount = 0;
+	for(int v = 0; v < n; ++v) {
+	    if(Next(rows, v * words, words, 0) >= 0) {
+		++vertexCount;
+		if(position[v] < 0) {
+		    Set(remaining, 0, v);
+		}
+	    }
+	}
+	if(3 * vertexCount - 6 < Count(rows, 0, rows.length) / 2) {
+	    return false;
+	}
+
+	// The chords: the bits of each cycle row that are on the cycle,
+	// later, and not next to it.
+	List<int[]> attach = new ArrayList<int[]>();
+	long[] chords = new long[words];
+	for(int i = 0; i < cycle.length; ++i) {
+	    And(chords, rows, cycle[i] * words, onCycle);
+	    for(int v = Next(chords, 0, words, 0); v >= 0;
+		v = Next(chords, 0, words, v + 1)) {
+		int j = position[v];
+		if(j > i && j - i != 1 && j - i != cycle.length - 1) {
+		    attach.add(new int[] { i, j });
+		}
+	    }
+	}
+	int chordCount = attach.size();
+
+	// The components of V-C, each grown a layer at a time.
+	List<long[]> components = new ArrayList<long[]>();
+	List<Boolean> paths = new ArrayList<Boolean>();
+	long[] frontier = new long[words];
+	long[] reached = new long[words];
+	for(int start = Next(remaining, 0, words, 0); start >= 0;
+	    start = Next(remaining, 0, words, 0)) {
+	    long[] component = new long[words];
+	    long[] touched = new long[words];
+	    Arrays.fill(frontier, 0);
+	    Set(frontier, 0, start);
+	    Set(component, 0, start);
+	    boolean path = true;
+	    while(Next(frontier, 0, words, 0) >= 0) {
+		Arrays.fill(reached, 0);
+		for(int u = Next(frontier, 0, words, 0); u >= 0;
+		    u = Next(frontier, 0, words, u + 1)) {
+		    Or(reached, rows, u * words);
+		    path &= Count(rows, u * words, words) <= 2;
+		}
+		Or(touched, reached, 0);
+		for(int w = 0; w < words; ++w) {
+		    frontier[w] = reached[w] & remaining[w] & ~component[w];
+		    component[w] |= frontier[w];
+		}
+	    }
+	    for(int w = 0; w < words; ++w) {
+		remaining[w] &= ~component[w];
+		touched[w] &= onCycle[w];
+	    }
+
+	    int[] positions = new int[Count(touched, 0, words)];
+	    int count = 0;
+	    for(int c = Next(touched, 0, words, 0); c >= 0;
+		c = Next(touched, 0, words, c + 1)) {
+		positions[count++] = position[c];
+		And(reached, rows, c * words, component);
+		path &= Count(reached, 0, words) <= 2;
+	    }
+	    Arrays.sort(positions);
+	    attach.add(positions);
+	    components.add(component);
+	    paths.add(path);
+	}
+
+	if(!Interlacement.IsBipartite(attach.toArray(new int[0][]),
+				      cycle.length)) {
+	    return false;
+	}
+
+	for(int c = 0; c < components.size(); ++c) {
+	    if(paths.get(c)) {
+		continue;
+	    }
+	    long[] component = components.get(c);
+	    int[] positions = attach.get(chordCount + c);
+	    int first = positions[0];
+	    int second = positions[1];
+
+	    // The piece's subproblem keeps the piece and the cycle.
+	    long[] next = new long[rows.length];
+	    for(int u = Next(component, 0, words, 0); u >= 0;
+		u = Next(component, 0, words, u + 1)) {
+		System.arraycopy(rows, u * words, next, u * words, words);
+	    }
+	    for(int i = 0; i < cycle.length; ++i) {
+		int row = cycle[i] * words;
+		for(int w = 0; w < words; ++w) {
+		    next[row + w] = rows[row + w] & component[w];
+		}
+		Set(next, row, cycle[(i + 1) % cycle.length]);
+		Set(next, row, cycle[(i + cycle.length - 1) % cycle.length]);
+	    }
+
+	    // The path between two consecutive attachments through the
+	    // piece, followed by the long way around the old cycle.
+	    int[] path = Path(next, words, cycle[first], cycle[second],
+			      component, false);
+	    int[] newCycle =
+		new int[path.length - 1 + cycle.length - (second - first)];
+	    int length = 0;
+	    for(int i = 0; i < path.length - 1; ++i) {
+		newCycle[length++] = path[i];
+	    }
+	    for(int i = second; i < cycle.length; ++i) {
+		newCycle[length++] = cycle[i];
+	    }
+	    for(int i = 0; i < first; ++i) {
+		newCycle[length++] = cycle[i];
+	    }
+
+	    if(!Test(next, newCycle)) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Finds a shortest path from one vertex to another whose inner
+     * vertices are all in the allowed set, by growing breadth-first
+     * layers and then walking back through them.  Unless direct is set,
+     * an edge between the two vertices does not count as a path, so that
+     * the path through a piece does not take the edge of the cycle
+     * between two consecutive attachments.
+     *
+     * @return	The path, starting with vertex1 and ending with vertex2,
+     * 		or null if there is none
+     */
+    private static int[] Path(long[] rows, int words, int vertex1,
+			      int vertex2, long[] allowed, boolean direct) {
+	List<long[]> layers = new ArrayList<long[]>();
+	long[] seen = new long[words];
+	long[] layer = new long[words];
+	Set(layer, 0, vertex1);
+	Set(seen, 0, vertex1);
+	while(!Get(layer, 0, vertex2) || layers.isEmpty()) {
+	    layers.add(layer);
+	    long[] next = new long[words];
+	    boolean arrived = false;
+	    for(int u = Next(layer, 0, words, 0); u >= 0;
+		u = Next(layer, 0, words, u + 1)) {
+		Or(next, rows, u * words);
+		arrived |= (u != vertex1 || direct) &&
+		    Get(rows, u * words, vertex2);
+	    }
+	    for(int w = 0; w < words; ++w) {
+		next[w] &= allowed[w] & ~seen[w];
+		seen[w] |= next[w];
+	    }
+	    if(arrived) {
+		Arrays.fill(next, 0);
+		Set(next, 0, vertex2);
+	    } else if(Next(next, 0, words, 0) < 0) {
+		return null;
+	    }
+	    layer = next;
+	}
+
+	int[] path = new int[layers.size() + 1];
+	path[layers.size()] = vertex2;
+	long[] candidates = new long[words];
+	for(int i = layers.size() - 1; i >= 0; --i) {
+	    And(candidates, rows, path[i+1] * words, layers.get(i));
+	    path[i] = Next(candidates, 0, words, 0);
+	}
+	return path;
+    }
+
+    /**
+     * Sets the bit of a vertex in the row starting at the given word.
+     */
+    private static void Set(long[] bits, int row, int vertex) {
+	bits[row + (vertex >>> 6)] |= 1L << vertex;
+    }
+
+    /**
+     * Tests the bit of a vertex in the row starting at the given word.
+     */
+    private static boolean Get(long[] bits, int row, int vertex) {
+	return (bits[row + (vertex >>> 6)] & (1L << vertex)) != 0;
+    }
+
+    /**
+     * ORs the row starting at the given word into a mask.
+     */
+    private static void Or(long[] mask, long[] bits, int row) {
+	for(int w = 0; w < mask.length; ++w) {
+	    mask[w] |= bits[row + w];
+	}
+    }
+
+    /**
+     * Sets a mask to the row starting at the given word ANDed with
+     * another mask.
+     */
+    private static void And(long[] mask, long[] bits, int row,
+			    long[] other) {
+	for(int w = 0; w < mask.length; ++w) {
+	    mask[w] = bits[row + w] & other[w];
+	}
+    }
+
+    /**
+     * Counts the bits set in the given words.
+     */
+    private static int Count(long[] bits, int from, int length) {
+	int count = 0;
+	for(int w = from; w < from + length; ++w) {
+	    count += Long.bitCount(bits[w]);
+	}
+	return count;
+    }
+
+    /**
+     * Returns the first vertex from the given one on whose bit is set in
+     * the row starting at the given word, or -1 if there is none.
+     */
+    private static int Next(long[] bits, int row, int words, int vertex) {
+	int w = vertex >>> 6;
+	if(w >= words) {
+	    return -1;
+	}
+	long word = bits[row + w] & (-1L << vertex);
+	while(word == 0) {
+	    if(++w == words) {
+		return -1;
+	    }
+	    word = bits[row + w];
+	}
+	return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * CSRGraph.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.util.Arrays;
+
+/**
+ * This class is an immutable graph stored in compressed sparse row form.
+ * The vertices are numbered 0..n-1 and the neighbors of vertex v are
+ * targets[offsets[v]] .. targets[offsets[v+1]-1], sorted in increasing
+ * order.  Every vertex also keeps the label it had in the graph it was
+ * built from (the number in the input file, or the vertex number in the
+ * parent graph for a piece), and the vertices are numbered in increasing
+ * order of their labels.
+ *
+ * Compared to Graph this costs two ints per directed edge instead of a
+ * boxed Integer and a hash node, and nothing can be changed once the graph
+ * is built, so one instance can be shared between threads without locking.
+ *
+ * @author Matthew McCarty
+ */
+
+public final class CSRGraph {
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] labels;
+    private final int edgeCount;
+
+    private CSRGraph(int[] offsets, int[] targets, int[] labels) {
+	this.offsets = offsets;
+	this.targets = targets;
+	this.labels = labels;
+	this.edgeCount = targets.length / 2;
+    }
+
+    /**
+     * Builds a graph from two parallel arrays of edge endpoints.  Duplicate
+     * edges (in either direction) are merged the same way Graph.addEdge
+     * merges them, and self loops are dropped, since neither matters for
+     * planarity.
+     *
+     * @param from	The first endpoint of each edge
+     * @param to	The second endpoint of each edge
+     * @param count	The number of edges to read from the arrays
+     * @return		The frozen graph
+     */
+    public static CSRGraph fromEdges(int[] from, int[] to, int count) {
+	int[] vertices = new int[2 * count];
+	System.arraycopy(from, 0, vertices, 0, count);
+	System.arraycopy(to, 0, vertices, count, count);
+	return build(sortedDistinct(vertices), from, to, count);
+    }
+
+    /**
+     * Builds a graph from an edge list.
+     *
+     * @param edges	The edge list
+     * @return		The frozen graph
+     */
+    public static CSRGraph fromEdges(EdgeList edges) {
+	return edges.toCSRGraph();
+    }
+
+    /**
+     * Builds the CSR form of a Graph.  Vertices that have lost all their
+     * edges are kept as isolated vertices.
+     *
+     * @param graph	The given graph
+     * @return		The frozen graph
+     */
+    public static CSRGraph fromGraph(Graph graph) {
+	int[] vertices = new int[graph.numberOfVertices()];
+	int n = 0;
+	for(Integer vertex : graph.getVertices()) {
+	    vertices[n++] = vertex;
+	}
+	int count = 0;
+	for(Integer vertex : graph.getVertices()) {
+	    count += graph.getNeighbors(vertex).size();
+	}
+	int[] from = new int[count];
+	int[] to = new int[count];
+	count = 0;
+	for(Integer vertex : graph.getVertices()) {
+	    for(Integer neighbor : graph.getNeighbors(vertex)) {
+		from[count] = vertex;
+		to[count++] = neighbor;
+	    }
+	}
+	return build(sortedDistinct(vertices), from, to, count);
+    }
+
+    /**
+     * Wraps arrays that are already in CSR form, as read back from a
+     * binary graph file.  The arrays are not copied, but they are checked:
+     * the labels must increase, every row must be sorted without repeats
+     * or self loops, and every edge must appear in both its rows.
+     *
+     * @param offsets	The start of every row, and the end of the last
+     * @param targets	The rows, one after the other
+     * @param labels	The label of every vertex
+     * @return		The graph over these arrays
+     * @throws IllegalArgumentException	If the arrays are not a valid
+     * 					CSR graph
+     */
+    public static CSRGraph fromArrays(int[] offsets, int[] targets,
+				      int[] labels) {
+	int n = labels.length;
+	if(offsets.length != n + 1 || offsets[0] != 0 ||
+	   offsets[n] != targets.length || targets.length % 2 != 0) {
+	    throw new IllegalArgumentException("Bad CSR sizes.");
+	}
+	for(int vertex = 0; vertex < n; ++vertex) {
+	    if(vertex > 0 && labels[vertex-1] >= labels[vertex]) {
+		throw new IllegalArgumentException("Labels out of order.");
+	    }
+	    if(offsets[vertex] > offsets[vertex+1]) {
+		throw new IllegalArgumentException("Offsets out of order.");
+	    }
+	    for(int i = offsets[vertex]; i < offsets[vertex+1]; ++i) {
+		if(targets[i] < 0 || targets[i] >= n || targets[i] == vertex ||
+		   (i > offsets[vertex] && targets[i-1] >= targets[i])) {
+		    throw new IllegalArgumentException("Bad row " + vertex +
+						       ".");
+		}
+	    }
+	}
+
+	// Walking the rows in order visits the entries of every row of the
+	// transpose in order, so each must be the next one in its row.
+	int[] next = Arrays.copyOf(offsets, n);
+	for(int vertex = 0; vertex < n; ++vertex) {
+	    for(int i = offsets[vertex]; i < offsets[vertex+1]; ++i) {
+		int target = targets[i];
+		if(next[target] == offsets[target+1] ||
+		   targets[next[target]++] != vertex) {
+		    throw new IllegalArgumentException("Edge " + vertex + "-" +
+						       target +
+						       " only stored once.");
+		}
+	    }
+	}
+	return new CSRGraph(offsets, targets, labels);
+    }
+
+    /**
+     * Sorts the array and removes repeated values.  Every edge puts both
+     * its endpoints here, so for big inputs the sort is done in parallel.
+     */
+    private static int[] sortedDistinct(int[] values) {
+	Arrays.parallelSort(values);
+	int n = 0;
+	for(int i = 0; i < values.length; ++i) {
+	    if(n == 0 || values[n-1] != values[i]) {
+		values[n++] = values[i];
+	    }
+	}
+	return Arrays.copyOf(values, n);
+    }
+
+    /**
+     * Builds the offsets and targets given the sorted vertex labels.
+     */
+    private static CSRGraph build(int[] labels, int[] from, int[] to,
+				  int count) {
+	int n = labels.length;
+	int[] u = new int[count];
+	int[] v = new int[count];
+	int[] offsets = new int[n + 1];
+
+	// Translate labels to dense ids and count the degrees.
+	for(int i = 0; i < count; ++i) {
+	    u[i] = Arrays.binarySearch(labels, from[i]);
+	    v[i] = Arrays.binarySearch(labels, to[i]);
+	    if(u[i] != v[i]) {
+		++offsets[u[i] + 1];
+		++offsets[v[i] + 1];
+	    }
+	}
+	for(int i = 0; i < n; ++i) {
+	    offsets[i+1] += offsets[i];
+	}
+
+	// Scatter both directions of every edge into its row.
+	int[] fill = Arrays.copyOf(offsets, n);
+	int[] targets = new int[offsets[n]];
+	for(int i = 0; i < count; ++i) {
+	    if(u[i] != v[i]) {
+		targets[fill[u[i]]++] = v[i];
+		targets[fill[v[i]]++] = u[i];
+	    }
+	}
+
+	// Sort every row and squeeze out duplicate edges.
+	int write = 0;
+	int rowStart = 0;
+	for(int vertex = 0; vertex < n; ++vertex) {
+	    int rowEnd = offsets[vertex+1];
+	    Arrays.sort(targets, rowStart, rowEnd);
+	    offsets[vertex] = write;
+	    for(int i = rowStart; i < rowEnd; ++i) {
+		if(i == rowStart || targets[i] != targets[i-1]) {
+		    targets[write++] = targets[i];
+		}
+	    }
+	    rowStart = rowEnd;
+	}
+	offsets[n] = write;
+
+	return new CSRGraph(offsets,
+			    write == targets.length ? targets
+			    : Arrays.copyOf(targets, write),
+			    labels);
+    }
+
+    /**
+     * Converts this graph back into a Graph, using the labels as the
+     * vertices.  Isolated vertices are lost, as Graph cannot hold them.
+     *
+     * @return	The equivalent Graph
+     */
+    public Graph toGraph() {
+	Graph graph = new Graph();
+	for(int vertex = 0; vertex < numberOfVertices(); ++vertex) {
+	    for(int i = offsets[vertex]; i < offsets[vertex+1]; ++i) {
+		if(vertex < targets[i]) {
+		    graph.addEdge(labels[vertex], labels[targets[i]]);
+		}
+	    }
+	}
+	return graph;
+    }
+
+    /**
+     * Returns the number of vertices in the graph.
+     *
+     * @return	The number of vertices
+     */
+    public int numberOfVertices() {
+	return labels.length;
+    }
+
+    /**
+     * Returns the number of edges in the graph.
+     *
+     * @return	The number of edges
+     */
+    public int numberOfEdges() {
+	return edgeCount;
+    }
+
+    /**
+     * Returns the number of neighbors of a vertex.
+     *
+     * @param vertex	The vertex in question
+     * @return		Its degree
+     */
+    public int degree(int vertex) {
+	return offsets[vertex+1] - offsets[vertex];
+    }
+
+    /**
+     * Returns the index of the first neighbor of a vertex.  The neighbors
+     * of v are target(edgeStart(v)) .. target(edgeEnd(v) - 1).
+     *
+     * @param vertex	The vertex in question
+     * @return		The start of its row
+     */
+    public int edgeStart(int vertex) {
+	return offsets[vertex];
+    }
+
+    /**
+     * Returns the index one past the last neighbor of a vertex.
+     *
+     * @param vertex	The vertex in question
+     * @return		The end of its row
+     */
+    public int edgeEnd(int vertex) {
+	return offsets[vertex+1];
+    }
+
+    /**
+     * Returns the vertex at the given position of the targets array.
+     *
+     * @param index	A position between edgeStart(v) and edgeEnd(v)
+     * @return		The neighbor stored there
+     */
+    public int target(int index) {
+	return targets[index];
+    }
+
+    /**
+     * Determines whether an edge exists between two vertices.
+     *
+     * @param vertex1  The first vertex
+     * @param vertex2  The second vertex
+     * @return	       True if an edge exists between the two vertices, false o/w.
+     */
+    public boolean containsEdge(int vertex1, int vertex2) {
+	return edgeIndex(vertex1, vertex2) >= 0;
+    }
+
+    /**
+     * Finds the index of the edge from one vertex to another, as used by
+     * target.
+     *
+     * @param vertex1  The vertex the edge starts at
+     * @param vertex2  The vertex the edge goes to
+     * @return	       The index, or -1 if there is no such edge
+     */
+    public int edgeIndex(int vertex1, int vertex2) {
+	int index = Arrays.binarySearch(targets, offsets[vertex1],
+					offsets[vertex1+1], vertex2);
+	return index >= 0 ? index : -1;
+    }
+
+    /**
+     * Returns the label of a vertex in the graph it was built from.
+     *
+     * @param vertex	The vertex in question
+     * @return		Its label
+     */
+    public int label(int vertex) {
+	return labels[vertex];
+    }
+
+    /**
+     * Finds the vertex with the given label.
+     *
+     * @param label	The label to look for
+     * @return		The vertex, or -1 if no vertex has this label
+     */
+    public int indexOf(int label) {
+	int vertex = Arrays.binarySearch(labels, label);
+	return vertex >= 0 ? vertex : -1;
+    }
+
+    /**
+     * Determines whether a graph is a path or not.  As with Graph.IsPath,
+     * a cycle also counts as a path.
+     *
+     * @return	True if graph is a path, false o/w
+     */
+    public boolean IsPath() {
+	for(int vertex = 0; vertex < numberOfVertices(); ++vertex) {
+	    if(degree(vertex) > 2) {
+		return false;
+	    }
+	}
+	return true;
+    }
+}
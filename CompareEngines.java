@@ -0,0 +1,203 @@
+/*
+ * CompareEngines.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class cross-checks the planarity engines against each other on
+ * generated graphs and then times them on growing sparse inputs.  The
+ * CSR pieces engine (Engine.PIECES) is the reference: any graph on which
+ * another engine disagrees with it is printed with its seed.
+ *
+ * The graphs are small, so every engine would test their blocks on a
+ * BitsetGraph or with the left-right test.  Every block is therefore
+ * also tested four ways, on its BitsetGraph, by PlanarityDriver, by
+ * PlanarityDriver after Kernel has reduced it and by the original
+ * PlanarityTesting on a Graph, and any block on which these disagree is
+ * printed too.
+ *
+ * Usage: java CompareEngines [trials [seed [maxVertices]]]
+ *
+ * @author Matthew McCarty
+ */
+
+public class CompareEngines {
+
+    /**
+     * Runs the cross-check, then the timings.
+     *
+     * @param args	The number of random graphs, the seed and the size of
+     * 			the largest graph to time
+     */
+    public static void main(String[] args) {
+	int trials = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+	long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+	int maxVertices = args.length > 2 ? Integer.parseInt(args[2]) : 64000;
+
+	if(CrossCheck(trials, seed) > 0) {
+	    System.exit(1);
+	}
+	TimeEngines(maxVertices, seed);
+    }
+
+    /**
+     * Compares every engine with the pieces engine on random graphs from
+     * all the generator families.
+     *
+     * @param trials	The number of graphs to try
+     * @param seed	The seed of the first graph
+     * @return		The number of disagreements
+     */
+    public static int CrossCheck(int trials, long seed) {
+	int mismatches = 0;
+	int planar = 0;
+
+	for(int t = 0; t < trials; ++t) {
+	    Random random = new Random(seed + t);
+	    CSRGraph graph = RandomGraph(t, random);
+	    boolean expected =
+		TestPlanarity.IsPlanar(graph, TestPlanarity.Engine.PIECES);
+	    if(expected) {
+		++planar;
+	    }
+
+	    for(TestPlanarity.Engine engine : TestPlanarity.Engine.values()) {
+		if(TestPlanarity.IsPlanar(graph, engine) != expected) {
+		    System.out.println("Mismatch: engine " + engine +
+				       ", seed " + (seed + t) + ", family " +
+				       t % 6 + ", expected " + expected);
+		    ++mismatches;
+		}
+	    }
+	    if(!CheckBlocks(graph)) {
+		System.out.println("Mismatch: blocks, seed " +
+				   (seed + t) + ", family " + t % 6);
+		++mismatches;
+	    }
+	}
+
+	System.out.println(trials + " graphs, " + planar + " planar, " +
+			   mismatches + " mismatches");
+	return mismatches;
+    }
+
+    /**
+     * Tests every block of a graph on its BitsetGraph, with
+     * PlanarityDriver, both on the block itself and on its kernel, and
+     * with the Graph version of PlanarityTesting.
+     *
+     * @param graph	The given graph
+     * @return		True if the four agree on every block
+     */
+    public static boolean CheckBlocks(CSRGraph graph) {
+	for(CSRGraph block : GraphUtilities.BiconnectedComponents(graph, 3)) {
+	    boolean bitset = new BitsetGraph(block).isPlanar();
+	    if(TestPlanarity.IsBlockPlanar(block, false) != bitset) {
+		return false;
+	    }
+
+	    // Any graph with fewer than 9 edges is planar.
+	    CSRGraph kernel = Kernel.Reduce(block).graph();
+	    boolean reduced = kernel.numberOfEdges() < 9 ||
+		TestPlanarity.IsBlockPlanar(kernel, false);
+	    if(reduced != bitset || GraphPlanar(block.toGraph()) != bitset) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Tests a biconnected Graph with the Graph version of the pieces
+     * engine, starting, as the original TestPlanarity did, from the first
+     * cycle found that has a piece.
+     */
+    private static boolean GraphPlanar(Graph graph) {
+	for(Integer vertex : graph.getVertices()) {
+	    List<Integer> cycle = GraphUtilities.FindCycle(graph, vertex);
+	    if(GraphUtilities.FindPieces(graph, cycle).size() > 0) {
+		// Check to see if there are more than 3n-6 edges
+		if((3 * graph.numberOfVertices() - 6) < graph.numberOfEdges()) {
+		    return false;
+		}
+		return TestPlanarity.PlanarityTesting(graph, cycle);
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Picks a small random graph, cycling through the generator families.
+     */
+    private static CSRGraph RandomGraph(int trial, Random random) {
+	int n = 4 + random.nextInt(20);
+	switch(trial % 6) {
+	case 0:
+	    return GraphGenerator.CycleWithChords(n, random.nextInt(2 * n),
+						  random);
+	case 1:
+	    return GraphGenerator.CycleWithChords(n, n / 2 + random.nextInt(n),
+						  random);
+	case 2:
+	    return GraphGenerator.Triangulation(n, random);
+	case 3:
+	    return GraphGenerator.OuterplanarCycle(n, random.nextInt(n),
+						   random);
+	case 4:
+	    return GraphGenerator.Grid(2 + random.nextInt(5),
+				       2 + random.nextInt(5));
+	default:
+	    return random.nextBoolean()
+		? GraphGenerator.SubdividedK5(random.nextInt(3))
+		: GraphGenerator.SubdividedK33(random.nextInt(3));
+	}
+    }
+
+    /**
+     * Times every engine on grids and random triangulations of doubling
+     * size.  An engine is dropped once a single run takes longer than ten
+     * seconds.
+     *
+     * @param maxVertices	The size of the largest graph
+     * @param seed		The seed of the triangulations
+     */
+    public static void TimeEngines(int maxVertices, long seed) {
+	TestPlanarity.Engine[] engines = TestPlanarity.Engine.values();
+	boolean[] dropped = new boolean[engines.length];
+
+	System.out.println("vertices\tfamily\tengine\tmilliseconds");
+	for(int n = 1000; n <= maxVertices; n *= 2) {
+	    int side = (int) Math.sqrt(n);
+	    CSRGraph[] graphs = {
+		GraphGenerator.Grid(side, side),
+		GraphGenerator.Triangulation(n, new Random(seed))
+	    };
+	    String[] families = { "grid", "triangulation" };
+
+	    for(int g = 0; g < graphs.length; ++g) {
+		for(int e = 0; e < engines.length; ++e) {
+		    if(dropped[e]) {
+			continue;
+		    }
+		    long start = System.nanoTime();
+		    TestPlanarity.IsPlanar(graphs[g], engines[e]);
+		    long millis = (System.nanoTime() - start) / 1000000;
+		    System.out.println(graphs[g].numberOfVertices() + "\t" +
+				       families[g] + "\t" + engines[e] +
+				       "\t" + millis);
+		    if(millis > 10000) {
+			dropped[e] = true;
+		    }
+		}
+	    }
+	}
+    }
+}
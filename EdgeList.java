@@ -0,0 +1,123 @@
+/*
+ * EdgeList.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.util.Arrays;
+
+/**
+ * A growable list of undirected edges kept in two primitive arrays.  This
+ * is what the loaders fill in before the edges are frozen into a CSRGraph,
+ * so reading a file never boxes a vertex.  Duplicate edges and self loops
+ * are kept here and only removed when the CSRGraph is built.
+ *
+ * @author Matthew McCarty
+ */
+
+public class EdgeList {
+    private int[] from;
+    private int[] to;
+    private int size;
+
+    /**
+     * The default constructor.
+     */
+    public EdgeList() {
+	this(16);
+    }
+
+    /**
+     * Creates an empty edge list with room for the given number of edges.
+     *
+     * @param capacity	The initial capacity
+     */
+    public EdgeList(int capacity) {
+	from = new int[Math.max(capacity, 1)];
+	to = new int[Math.max(capacity, 1)];
+	size = 0;
+    }
+
+    /**
+     * Appends an edge to the list.
+     *
+     * @param vertex1	The first vertex.
+     * @param vertex2	The second vertex.
+     */
+    public void addEdge(int vertex1, int vertex2) {
+	if(size == from.length) {
+	    int capacity = from.length + (from.length >> 1) + 1;
+	    from = Arrays.copyOf(from, capacity);
+	    to = Arrays.copyOf(to, capacity);
+	}
+	from[size] = vertex1;
+	to[size] = vertex2;
+	++size;
+    }
+
+    /**
+     * Appends all the edges of another list to this one.
+     *
+     * @param other	The edges to append
+     */
+    public void addAll(EdgeList other) {
+	int needed = size + other.size;
+	if(needed > from.length) {
+	    from = Arrays.copyOf(from, needed);
+	    to = Arrays.copyOf(to, needed);
+	}
+	System.arraycopy(other.from, 0, from, size, other.size);
+	System.arraycopy(other.to, 0, to, size, other.size);
+	size = needed;
+    }
+
+    /**
+     * Returns the first endpoint of the i-th edge.
+     *
+     * @param i	The edge index
+     * @return	The first endpoint
+     */
+    public int from(int i) {
+	return from[i];
+    }
+
+    /**
+     * Returns the second endpoint of the i-th edge.
+     *
+     * @param i	The edge index
+     * @return	The second endpoint
+     */
+    public int to(int i) {
+	return to[i];
+    }
+
+    /**
+     * Returns the number of edges in the list, duplicates included.
+     *
+     * @return	The number of edges
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * Empties the list but keeps its arrays, so that it can be reused
+     * for the next graph.
+     */
+    public void clear() {
+	size = 0;
+    }
+
+    /**
+     * Freezes the edges into a CSRGraph.
+     *
+     * @return	The CSR form of these edges
+     */
+    public CSRGraph toCSRGraph() {
+	return CSRGraph.fromEdges(from, to, size);
+    }
+}
@@ -0,0 +1,543 @@
+/*
+ * EdgeListLoader.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * This class reads a text edge list straight from a memory-mapped file.
+ * Every line holds two vertex numbers; the bytes are parsed in place into
+ * an EdgeList, so no String or array is made per line.
+ *
+ * Numbers are separated by any run of spaces or tabs, and lines may end
+ * in "\n" or "\r\n".  Blank lines are skipped, as is everything from a
+ * '#' or '%' to the end of the line.  Anything after the second number
+ * (a weight, say) is ignored, as it always has been.  A line that does
+ * not start with two numbers is an error, reported with its line number.
+ *
+ * Vertex numbers that do not fit an int, or names, can be loaded through
+ * a VertexInterner instead: the two vertices of a line are then its first
+ * two words, read as longs or taken as names, and each is replaced by its
+ * dense id, so the EdgeList and the CSRGraph built from it are labelled
+ * with the ids and the interner keeps the original labels.
+ *
+ * Files larger than a single mapping are read one window at a time, each
+ * window ending on a line boundary.  LoadParallel cuts the file into
+ * chunks the same way and parses them on a fork/join pool, each into its
+ * own EdgeList; the lists are then joined in file order.  Duplicate
+ * edges are left for CSRGraph to remove, as with any other EdgeList.
+ *
+ * @author Matthew McCarty
+ */
+
+public class EdgeListLoader {
+
+    /**
+     * The most bytes mapped at once.
+     */
+    static final long WINDOW = 1L << 30;
+
+    /**
+     * The smallest chunk LoadParallel hands to a task.
+     */
+    static final long MIN_CHUNK = 1L << 22;
+
+    /**
+     * Loads the edge list in the given file.
+     *
+     * @param filename	The name of the file
+     * @return		The edges, in file order
+     * @throws IOException	If the file cannot be read or a line is
+     * 				malformed
+     */
+    public static EdgeList Load(String filename) throws IOException {
+	return Load(filename, new EdgeList());
+    }
+
+    /**
+     * Loads the edge list in the given file into an existing list, which
+     * is emptied first.  This lets a caller that loads many files keep
+     * one list and its arrays.
+     *
+     * @param filename	The name of the file
+     * @param edges	The list to fill
+     * @return		The list, holding the edges in file order
+     * @throws IOException	If the file cannot be read or a line is
+     * 				malformed
+     */
+    public static EdgeList Load(String filename, EdgeList edges)
+	throws IOException {
+	return Load(filename, edges, null);
+    }
+
+    /**
+     * Loads the edge list in the given file, interning the vertex labels
+     * with the given interner.
+     *
+     * @param filename	The name of the file
+     * @param interner	The interner for the labels
+     * @return		The edges between the ids, in file order
+     * @throws IOException	If the file cannot be read or a line is
+     * 				malformed
+     */
+    public static EdgeList Load(String filename, VertexInterner interner)
+	throws IOException {
+	return Load(filename, new EdgeList(), interner);
+    }
+
+    /**
+     * Loads the edge list in the given file into an existing list, which
+     * is emptied first, interning the labels if an interner is given.
+     */
+    private static EdgeList Load(String filename, EdgeList edges,
+				 VertexInterner interner)
+	throws IOException {
+	RandomAccessFile file = new RandomAccessFile(filename, "r");
+	try {
+	    FileChannel channel = file.getChannel();
+	    edges.clear();
+	    Parse(channel, 0, channel.size(), 1, edges, interner);
+	    return edges;
+	} finally {
+	    file.close();
+	}
+    }
+
+    /**
+     * Loads the edge list in the given file, parsing chunks of it in
+     * parallel on the given pool.
+     *
+     * @param filename	The name of the file
+     * @param pool	The pool to run the tasks on
+     * @return		The edges, in file order
+     * @throws IOException	If the file cannot be read or a line is
+     * 				malformed
+     */
+    public static EdgeList LoadParallel(String filename, ForkJoinPool pool)
+	throws IOException {
+	return LoadParallel(filename, pool, null);
+    }
+
+    /**
+     * Loads the edge list in the given file in parallel, as above,
+     * interning the vertex labels with the given interner.  Every chunk
+     * interns its labels with an interner of its own, and the chunks'
+     * ids are then mapped to the given interner's in file order, so the
+     * ids are the same as those Load would give.
+     *
+     * @param filename	The name of the file
+     * @param pool	The pool to run the tasks on
+     * @param interner	The interner for the labels, or null to read
+     * 			vertex numbers
+     * @return		The edges, in file order
+     * @throws IOException	If the file cannot be read or a line is
+     * 				malformed
+     */
+    public static EdgeList LoadParallel(String filename, ForkJoinPool pool,
+					VertexInterner interner)
+	throws IOException {
+	RandomAccessFile file = new RandomAccessFile(filename, "r");
+	try {
+	    FileChannel channel = file.getChannel();
+	    long size = channel.size();
+	    int chunks = (int) Math.max(1, Math.min(4 * pool.getParallelism(),
+						    size / MIN_CHUNK));
+
+	    // Move every cut forward to the start of the next line.
+	    long[] starts = new long[chunks + 1];
+	    starts[chunks] = size;
+	    for(int c = 1; c < chunks; ++c) {
+		starts[c] = Math.max(starts[c-1],
+				     NextLine(channel, c * (size / chunks)));
+	    }
+
+	    List<ChunkTask> tasks = new ArrayList<ChunkTask>();
+	    for(int c = 0; c < chunks; ++c) {
+		tasks.add(new ChunkTask(channel, starts[c], starts[c+1],
+					interner == null
+					? null : interner.newEmpty()));
+	    }
+	    try {
+		for(Future<EdgeList> result : pool.invokeAll(tasks)) {
+		    result.get();
+		}
+	    } catch(InterruptedException ex) {
+		Thread.currentThread().interrupt();
+		throw new InterruptedIOException("Loading interrupted");
+	    } catch(ExecutionException ex) {
+		// A chunk does not know its first line number, so find the
+		// error again from the start of the file to report it.
+		Parse(channel, 0, size, 1, new EdgeList(),
+		      interner == null ? null : interner.newEmpty());
+		throw new IOException(ex.getCause());
+	    }
+
+	    int total = 0;
+	    for(ChunkTask task : tasks) {
+		total += task.edges.size();
+	    }
+	    EdgeList edges = new EdgeList(total);
+	    for(ChunkTask task : tasks) {
+		if(interner == null) {
+		    edges.addAll(task.edges);
+		    continue;
+		}
+		int[] id = new int[task.interner.size()];
+		for(int local = 0; local < id.length; ++local) {
+		    id[local] = interner.intern(task.interner, local);
+		}
+		EdgeList chunk = task.edges;
+		for(int i = 0; i < chunk.size(); ++i) {
+		    edges.addEdge(id[chunk.from(i)], id[chunk.to(i)]);
+		}
+	    }
+	    return edges;
+	} finally {
+	    file.close();
+	}
+    }
+
+    /**
+     * Returns the offset of the first line that starts after the given
+     * offset, or the size of the file if there is none.
+     */
+    private static long NextLine(FileChannel channel, long offset)
+	throws IOException {
+	ByteBuffer buffer = ByteBuffer.allocate(4096);
+	long size = channel.size();
+	while(offset < size) {
+	    buffer.clear();
+	    int read = channel.read(buffer, offset);
+	    for(int i = 0; i < read; ++i) {
+		if(buffer.get(i) == '\n') {
+		    return offset + i + 1;
+		}
+	    }
+	    offset += Math.max(read, 0);
+	}
+	return size;
+    }
+
+    /**
+     * Parses the lines in a range of a file, appending their edges.  The
+     * range must start at the beginning of a line.
+     *
+     * @param channel	The file
+     * @param start	The offset of the first byte
+     * @param end	The offset after the last byte
+     * @param firstLine	The line number of the first line, for errors
+     * @param edges	The list to append to
+     * @return		The number of lines parsed
+     * @throws IOException	If the file cannot be read or a line is
+     * 				malformed
+     */
+    public static long Parse(FileChannel channel, long start, long end,
+			     long firstLine, EdgeList edges)
+	throws IOException {
+	return Parse(channel, start, end, firstLine, edges, null);
+    }
+
+    /**
+     * Parses the lines in a range of a file, as above, interning the
+     * vertex labels if an interner is given.
+     *
+     * @param channel	The file
+     * @param start	The offset of the first byte
+     * @param end	The offset after the last byte
+     * @param firstLine	The line number of the first line, for errors
+     * @param edges	The list to append to
+     * @param interner	The interner for the labels, or null to read
+     * 			vertex numbers
+     * @return		The number of lines parsed
+     * @throws IOException	If the file cannot be read or a line is
+     * 				malformed
+     */
+    public static long Parse(FileChannel channel, long start, long end,
+			     long firstLine, EdgeList edges,
+			     VertexInterner interner)
+	throws IOException {
+	long line = firstLine;
+
+	while(start < end) {
+	    long length = Math.min(end - start, WINDOW);
+	    MappedByteBuffer buffer =
+		channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+
+	    // Stop the window after its last newline unless it is the last.
+	    int limit = (int) length;
+	    if(start + length < end) {
+		while(limit > 0 && buffer.get(limit - 1) != '\n') {
+		    --limit;
+		}
+		if(limit == 0) {
+		    throw new IOException("Line " + line + ": line too long");
+		}
+	    }
+
+	    line = interner == null
+		? ParseLines(buffer, limit, line, edges)
+		: ParseLabels(buffer, limit, line, edges, interner);
+	    start += limit;
+	}
+	return line - firstLine;
+    }
+
+    /**
+     * Parses the first limit bytes of a buffer.
+     *
+     * @return	The line number after the last line parsed
+     */
+    private static long ParseLines(MappedByteBuffer buffer, int limit,
+				   long line, EdgeList edges)
+	throws IOException {
+	int i = 0;
+
+	while(i < limit) {
+	    int lineStart = i;
+	    i = SkipBlanks(buffer, i, limit);
+	    if(i < limit && !EndsLine(buffer.get(i))) {
+		int end = NumberEnd(buffer, i, limit);
+		int second = end < 0 ? end : SkipBlanks(buffer, end, limit);
+		if(second == end || NumberEnd(buffer, second, limit) < 0) {
+		    throw Malformed(line, buffer, lineStart, limit,
+				    "two vertex numbers");
+		}
+		int u = ParseVertex(buffer, i, end, line);
+		i = second;
+		end = NumberEnd(buffer, i, limit);
+		int v = ParseVertex(buffer, i, end, line);
+		edges.addEdge(u, v);
+		i = end;
+	    }
+
+	    // Skip the rest of the line.
+	    while(i < limit && buffer.get(i) != '\n') {
+		++i;
+	    }
+	    ++i;
+	    ++line;
+	}
+	return line;
+    }
+
+    /**
+     * Parses the first limit bytes of a buffer, interning the first two
+     * words of every line.
+     *
+     * @return	The line number after the last line parsed
+     */
+    private static long ParseLabels(MappedByteBuffer buffer, int limit,
+				    long line, EdgeList edges,
+				    VertexInterner interner)
+	throws IOException {
+	int i = 0;
+
+	while(i < limit) {
+	    int lineStart = i;
+	    i = SkipBlanks(buffer, i, limit);
+	    if(i < limit && !EndsLine(buffer.get(i))) {
+		int end = WordEnd(buffer, i, limit);
+		int second = SkipBlanks(buffer, end, limit);
+		int secondEnd = WordEnd(buffer, second, limit);
+		if(secondEnd == second) {
+		    throw Malformed(line, buffer, lineStart, limit,
+				    "two vertex labels");
+		}
+		int u = InternLabel(buffer, i, end, line, interner);
+		int v = InternLabel(buffer, second, secondEnd, line, interner);
+		edges.addEdge(u, v);
+		i = secondEnd;
+	    }
+
+	    // Skip the rest of the line.
+	    while(i < limit && buffer.get(i) != '\n') {
+		++i;
+	    }
+	    ++i;
+	    ++line;
+	}
+	return line;
+    }
+
+    /**
+     * Returns the index after the word starting at i, which ends at a
+     * blank, the end of the line or a comment.
+     */
+    private static int WordEnd(MappedByteBuffer buffer, int i, int limit) {
+	while(i < limit && !IsBlank(buffer.get(i)) &&
+	      !EndsLine(buffer.get(i))) {
+	    ++i;
+	}
+	return i;
+    }
+
+    /**
+     * Interns the label between start and end, read as a long unless the
+     * interner holds names.
+     */
+    private static int InternLabel(MappedByteBuffer buffer, int start,
+				   int end, long line, VertexInterner interner)
+	throws IOException {
+	if(interner.holdsNames()) {
+	    return interner.intern(buffer, start, end);
+	}
+	boolean negative = buffer.get(start) == '-';
+	int digits = negative ? start + 1 : start;
+	if(digits == end) {
+	    throw new IOException("Line " + line + ": expected a number");
+	}
+
+	// Accumulate the value negated, which also reaches Long.MIN_VALUE.
+	long value = 0;
+	for(int i = digits; i < end; ++i) {
+	    int digit = buffer.get(i) - '0';
+	    if(digit < 0 || digit > 9) {
+		throw new IOException("Line " + line + ": expected a number");
+	    }
+	    if(value < (Long.MIN_VALUE + digit) / 10) {
+		throw new IOException("Line " + line +
+				      ": vertex number out of range");
+	    }
+	    value = value * 10 - digit;
+	}
+	if(!negative) {
+	    if(value == Long.MIN_VALUE) {
+		throw new IOException("Line " + line +
+				      ": vertex number out of range");
+	    }
+	    value = -value;
+	}
+	return interner.intern(value);
+    }
+
+    /**
+     * Returns the index after the number starting at i, or -1 if there is
+     * no number there followed by a blank, the end of the line or a
+     * comment.
+     */
+    private static int NumberEnd(MappedByteBuffer buffer, int i, int limit) {
+	int end = i;
+	if(end < limit && buffer.get(end) == '-') {
+	    ++end;
+	}
+	int digits = end;
+	while(end < limit &&
+	      buffer.get(end) >= '0' && buffer.get(end) <= '9') {
+	    ++end;
+	}
+	if(end == digits || (end < limit && !IsBlank(buffer.get(end)) &&
+			     !EndsLine(buffer.get(end)))) {
+	    return -1;
+	}
+	return end;
+    }
+
+    /**
+     * Converts the digits between start and end, with an optional minus
+     * sign, to a vertex number.
+     */
+    private static int ParseVertex(MappedByteBuffer buffer, int start,
+				   int end, long line)
+	throws IOException {
+	boolean negative = buffer.get(start) == '-';
+	long value = 0;
+	for(int i = negative ? start + 1 : start; i < end; ++i) {
+	    value = value * 10 + (buffer.get(i) - '0');
+	    if(value > (long) Integer.MAX_VALUE + 1) {
+		break;
+	    }
+	}
+	value = negative ? -value : value;
+	if(value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+	    throw new IOException("Line " + line +
+				  ": vertex number out of range");
+	}
+	return (int) value;
+    }
+
+    /**
+     * Returns the first index at or after i that is not a space, tab or
+     * carriage return.
+     */
+    private static int SkipBlanks(MappedByteBuffer buffer, int i, int limit) {
+	while(i < limit && IsBlank(buffer.get(i))) {
+	    ++i;
+	}
+	return i;
+    }
+
+    /**
+     * Returns true for the bytes that separate numbers.
+     */
+    private static boolean IsBlank(byte b) {
+	return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * Returns true for the bytes after which the rest of a line is
+     * ignored.
+     */
+    private static boolean EndsLine(byte b) {
+	return b == '\n' || b == '#' || b == '%';
+    }
+
+    /**
+     * Builds the error for a malformed line, quoting the start of the
+     * line.
+     */
+    private static IOException Malformed(long line, MappedByteBuffer buffer,
+					 int i, int limit, String expected) {
+	StringBuilder text = new StringBuilder();
+	while(i < limit && buffer.get(i) != '\n' && buffer.get(i) != '\r' &&
+	      text.length() < 40) {
+	    text.append((char) (buffer.get(i) & 0xff));
+	    ++i;
+	}
+	return new IOException("Line " + line +
+			       ": expected " + expected + ", found \"" +
+			       text + "\"");
+    }
+
+    /**
+     * The parse of one chunk of a file into its own edge list.
+     */
+    private static final class ChunkTask implements Callable<EdgeList> {
+	private final FileChannel channel;
+	private final long start;
+	private final long end;
+	private final EdgeList edges;
+	private final VertexInterner interner;
+
+	ChunkTask(FileChannel channel, long start, long end,
+		  VertexInterner interner) {
+	    this.channel = channel;
+	    this.start = start;
+	    this.end = end;
+	    this.interner = interner;
+	    this.edges = new EdgeList((int) Math.min((end - start) / 8,
+						     1 << 24));
+	}
+
+	public EdgeList call() throws IOException {
+	    Parse(channel, start, end, 1, edges, interner);
+	    return edges;
+	}
+    }
+}
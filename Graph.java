@@ -34,8 +34,19 @@ public class Graph {
 	edgeCount = 0;
     }
 	
+    /**
+     * The copy constructor.  Every adjacency set is copied as well, so
+     * edges added to or removed from the copy leave the other graph as it
+     * was.
+     * 
+     * @param other	The graph to copy
+     */
     public Graph(Graph other) {
-        adjList = (HashMap<Integer,Set<Integer>>) other.adjList.clone();
+	adjList = new HashMap<Integer,Set<Integer>>();
+	for(Integer vertex : other.adjList.keySet()) {
+	    adjList.put(vertex,
+			new HashSet<Integer>(other.adjList.get(vertex)));
+	}
 	edgeCount = other.edgeCount;
     }
 	
@@ -0,0 +1,326 @@
+/*
+ * Graph6Reader.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * This class reads a stream of graphs in the graph6 or sparse6 format of
+ * nauty, one graph per line, as written by geng and the other enumeration
+ * tools.  The stream is read through one byte buffer and every graph is
+ * decoded into the same EdgeList, so a stream of any length is read in
+ * constant memory.  An optional ">>graph6<<" or ">>sparse6<<" header is
+ * skipped; digraph6 and incremental sparse6 lines are rejected.
+ *
+ * Run on its own, it prints one line with planar or nonplanar for every
+ * graph in the stream.
+ *
+ * Usage: java Graph6Reader [-engine pieces|parallel|lr] [filename]
+ *
+ * @author Matthew McCarty
+ */
+
+public class Graph6Reader {
+    private final InputStream input;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position;
+    private int limit;
+    private byte[] line = new byte[256];
+    private int length;
+    private long lineNumber;
+    private final EdgeList edges = new EdgeList();
+    private int vertices;
+
+    /**
+     * Creates a reader over the given stream.
+     *
+     * @param input	The stream of graph6 or sparse6 lines
+     */
+    public Graph6Reader(InputStream input) {
+	this.input = input;
+    }
+
+    /**
+     * Tests every graph of a graph6 or sparse6 stream for planarity.
+     *
+     * @param args	[-engine pieces|parallel|lr] and the file to read;
+     * 			standard input if none is given
+     */
+    public static void main(String[] args) {
+	TestPlanarity.Engine engine = TestPlanarity.Engine.LEFT_RIGHT;
+	String filename = null;
+	PrintWriter output = new PrintWriter(
+	    new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+
+	try {
+	    for(int i = 0; i < args.length; ++i) {
+		if(args[i].equals("-engine") && i + 1 < args.length) {
+		    engine = TestPlanarity.ParseEngine(args[++i]);
+		} else {
+		    filename = args[i];
+		}
+	    }
+
+	    InputStream input = filename == null
+		? System.in : new FileInputStream(filename);
+	    try {
+		Graph6Reader reader = new Graph6Reader(input);
+		while(reader.next()) {
+		    boolean planar =
+			TestPlanarity.IsPlanar(reader.edges().toCSRGraph(),
+					       engine);
+		    output.println(planar ? "planar" : "nonplanar");
+		}
+	    } finally {
+		input.close();
+	    }
+	} catch(IOException ex) {
+	    output.flush();
+	    System.err.println((filename == null ? "stdin" : filename) +
+			       ": " + ex.getMessage());
+	} catch(Exception ex) {
+	    output.flush();
+	    System.err.println(ex.getMessage());
+	}
+	output.flush();
+    }
+
+    /**
+     * Reads the next graph of the stream.  Its edges are then available
+     * from edges() until the next call.
+     *
+     * @return	False at the end of the stream
+     * @throws IOException	If the stream cannot be read or a line is
+     * 				not a graph6 or sparse6 graph
+     */
+    public boolean next() throws IOException {
+	do {
+	    if(!readLine()) {
+		return false;
+	    }
+	    if(startsWith(">>graph6<<") || startsWith(">>sparse6<<")) {
+		int skip = line[2] == 'g' ? 10 : 11;
+		System.arraycopy(line, skip, line, 0, length - skip);
+		length -= skip;
+	    }
+	} while(length == 0);
+
+	edges.clear();
+	if(line[0] == ':') {
+	    decodeSparse6();
+	} else if(line[0] == '&' || line[0] == ';') {
+	    throw malformed("digraph6 and incremental sparse6 are not"
+			    + " supported");
+	} else {
+	    decodeGraph6();
+	}
+	return true;
+    }
+
+    /**
+     * Returns the edges of the graph last read.  The list is reused by
+     * the next call to next().
+     *
+     * @return	The edges
+     */
+    public EdgeList edges() {
+	return edges;
+    }
+
+    /**
+     * Returns the number of vertices of the graph last read, isolated
+     * ones included.
+     *
+     * @return	The number of vertices
+     */
+    public int numberOfVertices() {
+	return vertices;
+    }
+
+    /**
+     * Decodes a graph6 line: the number of vertices, then the upper
+     * triangle of the adjacency matrix column by column, six bits to a
+     * byte.
+     */
+    private void decodeGraph6() throws IOException {
+	int start = readSize(0);
+	long bits = (long) vertices * (vertices - 1) / 2;
+	if(length - start != (bits + 5) / 6) {
+	    throw malformed("wrong length for " + vertices + " vertices");
+	}
+
+	int i = 0;
+	int j = 1;
+	for(int k = start; k < length; ++k) {
+	    int value = sextet(k);
+	    for(int bit = 5; bit >= 0 && j < vertices; --bit) {
+		if(((value >> bit) & 1) != 0) {
+		    edges.addEdge(i, j);
+		}
+		if(++i == j) {
+		    i = 0;
+		    ++j;
+		}
+	    }
+	}
+    }
+
+    /**
+     * Decodes a sparse6 line: the number of vertices, then a run of
+     * (b, x) units of 1 + k bits, where b moves the current vertex v on
+     * by one and x either becomes v (x > v) or is joined to it.
+     */
+    private void decodeSparse6() throws IOException {
+	int k = readSize(1);
+	int width = 1;
+	while(width < 31 && (1 << width) < vertices) {
+	    ++width;
+	}
+
+	int v = 0;
+	int unit = 1 + width;
+	long current = 0;
+	int available = 0;
+	while(true) {
+	    while(available < unit && k < length) {
+		current = (current << 6) | sextet(k++);
+		available += 6;
+	    }
+	    if(available < unit) {
+		break;
+	    }
+	    available -= unit;
+	    int b = (int) (current >>> (available + width)) & 1;
+	    int x = (int) (current >>> available) & ((1 << width) - 1);
+	    current &= (1L << available) - 1;
+
+	    if(b == 1) {
+		++v;
+	    }
+	    // Padding with ones can give an x or v past the last vertex.
+	    if(x >= vertices || v >= vertices) {
+		break;
+	    } else if(x > v) {
+		v = x;
+	    } else {
+		edges.addEdge(x, v);
+	    }
+	}
+    }
+
+    /**
+     * Reads the number of vertices starting at the given byte.
+     *
+     * @return	The index of the first byte after it
+     */
+    private int readSize(int start) throws IOException {
+	if(start >= length) {
+	    throw malformed("missing number of vertices");
+	}
+	int digits;
+	if(line[start] != 126) {
+	    vertices = sextet(start);
+	    return start + 1;
+	} else if(start + 1 < length && line[start+1] != 126) {
+	    digits = 3;
+	    ++start;
+	} else {
+	    digits = 6;
+	    start += 2;
+	}
+	if(start + digits > length) {
+	    throw malformed("truncated number of vertices");
+	}
+	long n = 0;
+	for(int i = 0; i < digits; ++i) {
+	    n = (n << 6) | sextet(start + i);
+	}
+	if(n > Integer.MAX_VALUE) {
+	    throw malformed("too many vertices");
+	}
+	vertices = (int) n;
+	return start + digits;
+    }
+
+    /**
+     * Returns the six bits held by the given byte of the line.
+     */
+    private int sextet(int index) throws IOException {
+	int value = line[index] - 63;
+	if(value < 0 || value > 63) {
+	    throw malformed("bad character '" + (char) line[index] + "'");
+	}
+	return value;
+    }
+
+    /**
+     * Reads the next line into the line buffer, without its line end.
+     *
+     * @return	False if the stream has ended
+     */
+    private boolean readLine() throws IOException {
+	length = 0;
+	while(true) {
+	    if(position == limit) {
+		limit = input.read(buffer, 0, buffer.length);
+		position = 0;
+		if(limit <= 0) {
+		    limit = 0;
+		    if(length == 0) {
+			return false;
+		    }
+		    break;
+		}
+	    }
+	    byte b = buffer[position++];
+	    if(b == '\n') {
+		break;
+	    }
+	    if(length == line.length) {
+		byte[] larger = new byte[2 * line.length];
+		System.arraycopy(line, 0, larger, 0, length);
+		line = larger;
+	    }
+	    line[length++] = b;
+	}
+	++lineNumber;
+	while(length > 0 &&
+	      (line[length-1] == '\r' || line[length-1] == ' ')) {
+	    --length;
+	}
+	return true;
+    }
+
+    /**
+     * Determines whether the current line starts with the given text.
+     */
+    private boolean startsWith(String text) {
+	if(length < text.length()) {
+	    return false;
+	}
+	for(int i = 0; i < text.length(); ++i) {
+	    if(line[i] != text.charAt(i)) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Builds the error for the current line.
+     */
+    private IOException malformed(String message) {
+	return new IOException("Line " + lineNumber + ": " + message);
+    }
+}
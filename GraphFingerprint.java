@@ -0,0 +1,252 @@
+/*
+ * GraphFingerprint.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.util.Arrays;
+
+/**
+ * This class is a key for a graph's edge set that does not depend on the
+ * order the edges came in, and can be made not to depend on the labels of
+ * the vertices either, for caching planarity results.
+ *
+ * A fingerprint holds the edges in a canonical order and a 128-bit hash
+ * of them; two fingerprints are equal only if their edges are, so a hash
+ * collision can never return the result of another graph.  Of lists the
+ * edges by their labels, which CSRGraph has already sorted and freed of
+ * duplicates, so it only ignores the edge order.  Canonical also ignores
+ * the labels: it refines the vertex degrees Weisfeiler-Lehman style, a
+ * vertex's new color hashing its old color with the sum of its
+ * neighbors', until the number of colors stops growing.  If every vertex
+ * ends up with a color of its own, ranking the vertices by color is a
+ * labelling that any relabelled copy of the graph also gets, and the
+ * edges under it are the key.  Otherwise, as in a regular graph, there
+ * is no such labelling and Canonical returns null.
+ *
+ * @author Matthew McCarty
+ */
+
+public final class GraphFingerprint {
+
+    /**
+     * The most rounds of color refinement Canonical runs.
+     */
+    static final int MAX_ROUNDS = 32;
+
+    private final boolean canonical;
+    private final int vertices;
+    private final int[] edges;
+    private final long high;
+    private final long low;
+
+    private GraphFingerprint(boolean canonical, int vertices, int[] edges) {
+	this.canonical = canonical;
+	this.vertices = vertices;
+	this.edges = edges;
+
+	long a = Mix(vertices ^ (canonical ? 0x5bd1e995L : 0));
+	long b = Mix(a + 0x165667b19e3779f9L);
+	for(int i = 0; i < edges.length; i += 2) {
+	    long edge = ((long) edges[i] << 32) | (edges[i+1] & 0xffffffffL);
+	    a = Mix(a ^ edge) * 0x9e3779b97f4a7c15L;
+	    b = Mix(b + edge * 0xc2b2ae3d27d4eb4fL);
+	}
+	this.high = Mix(a);
+	this.low = Mix(b ^ edges.length);
+    }
+
+    /**
+     * Returns the fingerprint of a graph's edges between its labels.
+     *
+     * @param graph	The given graph
+     * @return		The fingerprint
+     */
+    public static GraphFingerprint Of(CSRGraph graph) {
+	int[] edges = new int[2 * graph.numberOfEdges()];
+	int count = 0;
+	for(int v = 0; v < graph.numberOfVertices(); ++v) {
+	    for(int k = graph.edgeStart(v); k < graph.edgeEnd(v); ++k) {
+		if(v < graph.target(k)) {
+		    edges[count++] = graph.label(v);
+		    edges[count++] = graph.label(graph.target(k));
+		}
+	    }
+	}
+	return new GraphFingerprint(false, graph.numberOfVertices(), edges);
+    }
+
+    /**
+     * Returns the fingerprint of a graph up to the labels of its vertices,
+     * if color refinement tells all of them apart.
+     *
+     * @param graph	The given graph
+     * @return		The fingerprint, or null if some vertices could not
+     * 			be told apart
+     */
+    public static GraphFingerprint Canonical(CSRGraph graph) {
+	int n = graph.numberOfVertices();
+	long[] color = new long[n];
+	for(int v = 0; v < n; ++v) {
+	    color[v] = graph.degree(v);
+	}
+	int classes = Classes(color);
+	long[] next = new long[n];
+	for(int round = 0; round < MAX_ROUNDS && classes < n; ++round) {
+	    for(int v = 0; v < n; ++v) {
+		long sum = 0;
+		for(int k = graph.edgeStart(v); k < graph.edgeEnd(v); ++k) {
+		    sum += Mix(color[graph.target(k)] + 0x632be59bd9b4e019L);
+		}
+		next[v] = Mix(color[v] * 0x9e3779b97f4a7c15L + sum);
+	    }
+	    int nextClasses = Classes(next);
+	    if(nextClasses <= classes) {
+		break;
+	    }
+	    long[] swap = color;
+	    color = next;
+	    next = swap;
+	    classes = nextClasses;
+	}
+	if(classes < n) {
+	    return null;
+	}
+
+	// Rank the vertices by color and list the edges by rank.
+	long[] sorted = color.clone();
+	Arrays.sort(sorted);
+	int[] rank = new int[n];
+	for(int v = 0; v < n; ++v) {
+	    rank[v] = Arrays.binarySearch(sorted, color[v]);
+	}
+	long[] pairs = new long[graph.numberOfEdges()];
+	int count = 0;
+	for(int v = 0; v < n; ++v) {
+	    for(int k = graph.edgeStart(v); k < graph.edgeEnd(v); ++k) {
+		int w = graph.target(k);
+		if(rank[v] < rank[w]) {
+		    pairs[count++] = ((long) rank[v] << 32) | rank[w];
+		}
+	    }
+	}
+	Arrays.sort(pairs);
+	int[] edges = new int[2 * count];
+	for(int i = 0; i < count; ++i) {
+	    edges[2*i] = (int) (pairs[i] >>> 32);
+	    edges[2*i + 1] = (int) pairs[i];
+	}
+	return new GraphFingerprint(true, n, edges);
+    }
+
+    /**
+     * Returns the canonical fingerprint of a graph if it has one and
+     * relabelling is to be ignored, and the fingerprint of its labelled
+     * edges otherwise.
+     *
+     * @param graph	The given graph
+     * @param relabel	Whether relabelled copies should get the same
+     * 			fingerprint
+     * @return		The fingerprint
+     */
+    public static GraphFingerprint Of(CSRGraph graph, boolean relabel) {
+	GraphFingerprint fingerprint = relabel ? Canonical(graph) : null;
+	return fingerprint != null ? fingerprint : Of(graph);
+    }
+
+    /**
+     * Determines whether this fingerprint ignores the vertex labels.
+     *
+     * @return	True if it is canonical
+     */
+    public boolean isCanonical() {
+	return canonical;
+    }
+
+    /**
+     * Returns the number of vertices of the graph.
+     *
+     * @return	The number of vertices
+     */
+    public int vertices() {
+	return vertices;
+    }
+
+    /**
+     * Returns the edges in their canonical order, as pairs of labels.  The
+     * array is not copied and must not be changed.
+     *
+     * @return	The edges
+     */
+    int[] edges() {
+	return edges;
+    }
+
+    /**
+     * Returns the high 64 bits of the hash.
+     *
+     * @return	The high bits
+     */
+    public long high() {
+	return high;
+    }
+
+    /**
+     * Returns the low 64 bits of the hash.
+     *
+     * @return	The low bits
+     */
+    public long low() {
+	return low;
+    }
+
+    public boolean equals(Object other) {
+	if(!(other instanceof GraphFingerprint)) {
+	    return false;
+	}
+	GraphFingerprint that = (GraphFingerprint) other;
+	return high == that.high && low == that.low &&
+	    canonical == that.canonical && vertices == that.vertices &&
+	    Arrays.equals(edges, that.edges);
+    }
+
+    public int hashCode() {
+	return (int) low;
+    }
+
+    public String toString() {
+	return String.format("%016x%016x", high, low);
+    }
+
+    /**
+     * Counts the distinct values of an array.
+     */
+    private static int Classes(long[] color) {
+	long[] sorted = color.clone();
+	Arrays.sort(sorted);
+	int classes = 0;
+	for(int i = 0; i < sorted.length; ++i) {
+	    if(i == 0 || sorted[i] != sorted[i-1]) {
+		++classes;
+	    }
+	}
+	return classes;
+    }
+
+    /**
+     * Spreads the bits of a long, so that values that differ in a few bits
+     * hash far apart.
+     */
+    static long Mix(long value) {
+	value ^= value >>> 33;
+	value *= 0xff51afd7ed558ccdL;
+	value ^= value >>> 33;
+	value *= 0xc4ceb9fe1a85ec53L;
+	value ^= value >>> 33;
+	return value;
+    }
+}
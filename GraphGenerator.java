@@ -0,0 +1,226 @@
+/*
+ * GraphGenerator.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.util.Random;
+
+/**
+ * This class builds reproducible families of test graphs, used to compare
+ * the planarity engines against each other and to time them.  Every graph
+ * returned here is biconnected, so all the engines accept it, and the
+ * random ones only depend on the seed of the given Random.
+ *
+ * @author Matthew McCarty
+ */
+
+public class GraphGenerator {
+
+    /**
+     * A rows x columns grid.  Planar.
+     *
+     * @param rows	The number of rows (at least 2)
+     * @param columns	The number of columns (at least 2)
+     * @return		The grid graph
+     */
+    public static CSRGraph Grid(int rows, int columns) {
+	EdgeList edges = new EdgeList(2 * rows * columns);
+	for(int r = 0; r < rows; ++r) {
+	    for(int c = 0; c < columns; ++c) {
+		int vertex = r * columns + c;
+		if(c + 1 < columns) {
+		    edges.addEdge(vertex, vertex + 1);
+		}
+		if(r + 1 < rows) {
+		    edges.addEdge(vertex, vertex + columns);
+		}
+	    }
+	}
+	return edges.toCSRGraph();
+    }
+
+    /**
+     * A wheel: a cycle of n-1 vertices, all joined to a hub.  Planar.
+     *
+     * @param n	The number of vertices (at least 4)
+     * @return	The wheel graph
+     */
+    public static CSRGraph Wheel(int n) {
+	EdgeList edges = new EdgeList(2 * n);
+	for(int i = 1; i < n; ++i) {
+	    edges.addEdge(0, i);
+	    edges.addEdge(i, i % (n - 1) + 1);
+	}
+	return edges.toCSRGraph();
+    }
+
+    /**
+     * A random maximal planar graph (3n-6 edges), built by starting with a
+     * triangle and repeatedly putting a new vertex inside a random face and
+     * joining it to the three corners.
+     *
+     * @param n		The number of vertices (at least 3)
+     * @param random	The source of randomness
+     * @return		The triangulation
+     */
+    public static CSRGraph Triangulation(int n, Random random) {
+	EdgeList edges = new EdgeList(3 * n);
+	int[] faces = new int[3 * (2 * n)];
+	int faceCount = 1;
+	faces[0] = 0;
+	faces[1] = 1;
+	faces[2] = 2;
+	edges.addEdge(0, 1);
+	edges.addEdge(1, 2);
+	edges.addEdge(2, 0);
+
+	for(int vertex = 3; vertex < n; ++vertex) {
+	    int face = random.nextInt(faceCount);
+	    int a = faces[3 * face];
+	    int b = faces[3 * face + 1];
+	    int c = faces[3 * face + 2];
+	    edges.addEdge(vertex, a);
+	    edges.addEdge(vertex, b);
+	    edges.addEdge(vertex, c);
+
+	    // Split the face into three.
+	    faces[3 * face + 2] = vertex;
+	    faces[3 * faceCount] = b;
+	    faces[3 * faceCount + 1] = c;
+	    faces[3 * faceCount + 2] = vertex;
+	    ++faceCount;
+	    faces[3 * faceCount] = c;
+	    faces[3 * faceCount + 1] = a;
+	    faces[3 * faceCount + 2] = vertex;
+	    ++faceCount;
+	}
+	return edges.toCSRGraph();
+    }
+
+    /**
+     * A cycle on n vertices with random chords added.  Planar when there
+     * are few chords, and almost never when there are many.
+     *
+     * @param n		The length of the cycle (at least 3)
+     * @param chords	The number of chords to try adding
+     * @param random	The source of randomness
+     * @return		The graph
+     */
+    public static CSRGraph CycleWithChords(int n, int chords, Random random) {
+	EdgeList edges = new EdgeList(n + chords);
+	for(int i = 0; i < n; ++i) {
+	    edges.addEdge(i, (i + 1) % n);
+	}
+	for(int i = 0; i < chords; ++i) {
+	    int u = random.nextInt(n);
+	    int v = random.nextInt(n);
+	    if(u != v) {
+		edges.addEdge(u, v);
+	    }
+	}
+	return edges.toCSRGraph();
+    }
+
+    /**
+     * A cycle on n vertices with non-crossing chords, so that the result
+     * is planar however many chords there are.  Each chord joins the ends
+     * of a random interval and the intervals are nested or disjoint.
+     *
+     * @param n		The length of the cycle (at least 3)
+     * @param chords	The number of chords to try adding
+     * @param random	The source of randomness
+     * @return		The graph
+     */
+    public static CSRGraph OuterplanarCycle(int n, int chords,
+					    Random random) {
+	EdgeList edges = new EdgeList(n + chords);
+	for(int i = 0; i < n; ++i) {
+	    edges.addEdge(i, (i + 1) % n);
+	}
+
+	// Split [0, n-1] recursively, each split adding one chord.
+	int[] stack = new int[2 * n];
+	int top = 0;
+	stack[top++] = 0;
+	stack[top++] = n - 1;
+	while(top > 0 && chords > 0) {
+	    int high = stack[--top];
+	    int low = stack[--top];
+	    if(high - low < 2) {
+		continue;
+	    }
+	    int middle = low + 1 + random.nextInt(high - low - 1);
+	    if(middle - low >= 2) {
+		edges.addEdge(low, middle);
+		--chords;
+	    }
+	    if(high - middle >= 2 && chords > 0) {
+		edges.addEdge(middle, high);
+		--chords;
+	    }
+	    stack[top++] = low;
+	    stack[top++] = middle;
+	    stack[top++] = middle;
+	    stack[top++] = high;
+	}
+	return edges.toCSRGraph();
+    }
+
+    /**
+     * K5 with every edge replaced by a path of the given number of
+     * internal vertices.  Nonplanar.
+     *
+     * @param subdivisions	The internal vertices on each edge
+     * @return			The subdivided K5
+     */
+    public static CSRGraph SubdividedK5(int subdivisions) {
+	EdgeList edges = new EdgeList(10 * (subdivisions + 1));
+	int next = 5;
+	for(int u = 0; u < 5; ++u) {
+	    for(int v = u + 1; v < 5; ++v) {
+		next = AddPath(edges, u, v, subdivisions, next);
+	    }
+	}
+	return edges.toCSRGraph();
+    }
+
+    /**
+     * K3,3 with every edge replaced by a path of the given number of
+     * internal vertices.  Nonplanar.
+     *
+     * @param subdivisions	The internal vertices on each edge
+     * @return			The subdivided K3,3
+     */
+    public static CSRGraph SubdividedK33(int subdivisions) {
+	EdgeList edges = new EdgeList(9 * (subdivisions + 1));
+	int next = 6;
+	for(int u = 0; u < 3; ++u) {
+	    for(int v = 3; v < 6; ++v) {
+		next = AddPath(edges, u, v, subdivisions, next);
+	    }
+	}
+	return edges.toCSRGraph();
+    }
+
+    /**
+     * Adds a path from u to v through the given number of new vertices,
+     * numbered from next on.
+     *
+     * @return	The first unused vertex number
+     */
+    private static int AddPath(EdgeList edges, int u, int v, int internal,
+			       int next) {
+	int previous = u;
+	for(int i = 0; i < internal; ++i) {
+	    edges.addEdge(previous, next);
+	    previous = next++;
+	}
+	edges.addEdge(previous, v);
+	return next;
+    }
+}
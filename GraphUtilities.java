@@ -1,9 +1,12 @@
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 
@@ -27,7 +30,7 @@ public class GraphUtilities {
      */
     public static List<Integer> FindCycle(Graph graph, Integer vertex) {
 	Stack<Integer> seenVertices = new Stack<Integer>();
-	List<Integer> explored = new LinkedList<Integer>();
+	Set<Integer> explored = new HashSet<Integer>();
 	HashMap<Integer,Integer> parent = new HashMap<Integer,Integer>();
 		
 	seenVertices.add(vertex);
@@ -85,7 +88,7 @@ public class GraphUtilities {
 					 Integer vertex2,
 					 Set<Integer> otherAttach) {
 	Stack<Integer> seenVertices = new Stack<Integer>();
-	List<Integer> explored = new LinkedList<Integer>();
+	Set<Integer> explored = new HashSet<Integer>();
 	HashMap<Integer,Integer> parent = new HashMap<Integer,Integer>();
 		
 	seenVertices.add(vertex1);
@@ -318,12 +321,10 @@ public class GraphUtilities {
      * This function takes a graph and a cycle and returns the pieces
      * according to the cycle.  For the non-chord pieces, the function
      * uses a modified DFS that stops when it hits any vertex on the cycle.
-     * For chordal pieces, the graph simply checks each pair of vertices to
-     * see if a non-cycle edge exists between them.
-     * 
-     * Note:  Due to the way Java handles objects and argument passing, 
-     * you must make a copy of the graph before the function is called,
-     * since the algorithm modifies the graph.
+     * For chordal pieces, the function looks at the neighbors of each
+     * cycle vertex for a later cycle vertex that is not next to it on
+     * the cycle, so each chord is taken once, from its earlier end, and
+     * the graph is left as it was; it does not have to be copied first.
      * 
      * @param graph	The given graph.
      * @param cycle
@@ -331,35 +332,38 @@ public class GraphUtilities {
      */
     public static List<Graph> FindPieces(Graph graph, List<Integer> cycle) {
 	List<Graph> pieces = new LinkedList<Graph>();
+	Integer[] cycleArray = cycle.toArray(new Integer[cycle.size()]);
+	Map<Integer, Integer> position = new HashMap<Integer, Integer>();
+	for(int i = 0; i < cycleArray.length; ++i) {
+	    position.put(cycleArray[i], i);
+	}
 
-	// Check each pair of vertices for edges for chord pieces.
-	for(int i = 0; i < cycle.size(); ++i) {
-	    for(int j = 0; j < cycle.size(); ++j) {
-		Integer vertex1 = cycle.get(i);
-		Integer vertex2 = cycle.get(j);
-				
-		if(!vertex1.equals(vertex2) && 
-		    graph.containsEdge(vertex1, vertex2) &&
-					Math.abs(i - j) != 1 &&
-					Math.abs(i - j) != cycle.size() - 1) {
-					
-		    Graph chord = new Graph();
-		    chord.addEdge(vertex1, vertex2);
-		    graph.removeEdge(vertex1, vertex2);
-		    pieces.add(chord);
+	// Check the neighbors of each cycle vertex for chord pieces.
+	List<Integer> later = new ArrayList<Integer>();
+	for(int i = 0; i < cycleArray.length; ++i) {
+	    later.clear();
+	    for(Integer neighbor : graph.getNeighbors(cycleArray[i])) {
+		Integer j = position.get(neighbor);
+		if(j != null && j > i && j - i != 1 &&
+		   j - i != cycleArray.length - 1) {
+		    later.add(j);
 		}
 	    }
-			
+	    Collections.sort(later);
+	    for(Integer j : later) {
+		Graph chord = new Graph();
+		chord.addEdge(cycleArray[i], cycleArray[j]);
+		pieces.add(chord);
+	    }
 	}
 
 	Set<Integer> pieceVertices = new HashSet<Integer>(graph.getVertices());
-	    pieceVertices.removeAll(cycle);
+	    pieceVertices.removeAll(position.keySet());
 
 	// While there are still vertices left in V-C
 	while(!pieceVertices.isEmpty()) {
-	    Object[] pvArray = pieceVertices.toArray();
 	    Graph piece = new Graph();
-	    Integer vertex = (Integer) pvArray[0];
+	    Integer vertex = pieceVertices.iterator().next();
 	    Set<Integer> explored = new HashSet<Integer>();
 	    Stack<Integer> seen = new Stack<Integer>();
 	    seen.push(vertex);
@@ -371,7 +375,7 @@ public class GraphUtilities {
 		    explored.add(u);
 		    for(Integer neighbor : graph.getNeighbors(u)) {
 			piece.addEdge(u, neighbor);
-			if(!cycle.contains(neighbor)) {
+			if(!position.containsKey(neighbor)) {
 			    seen.push(neighbor);
 			}
 		    }
@@ -385,5 +389,281 @@ public class GraphUtilities {
 	    pieceVertices.removeAll(piece.getVertices());
 	}
 	return pieces;
-    }  
+    }
+
+    /**
+     * The CSR version of FindCycle.  It runs the same DFS in the calling
+     * thread's Traversal workspace, whose arrays are indexed by vertex and
+     * reused from call to call, so membership checks are constant time,
+     * nothing is boxed and the search costs O(n+m) at most.
+     * 
+     * @param graph		The given graph.
+     * @param vertex	The start vertex for the cycle.
+     * @return			The vertices of the cycle in order, or null if
+     * 					no cycle was found.
+     */
+    public static int[] FindCycle(CSRGraph graph, int vertex) {
+	return Traversal.ForCurrentThread().findCycle(graph, vertex);
+    }
+
+    /**
+     * The CSR version of FindPath.
+     * 
+     * @param graph		    The graph containing 2 vertices
+     * @param vertex1   	The first vertex
+     * @param vertex2		The second vertex
+     * @param otherAttach	The attachment vertices to avoid
+     * @param attachCount	The number of entries of otherAttach to use
+     * @return				The path of vertices, starting with vertex1
+     */
+    public static int[] FindPath(CSRGraph graph, int vertex1, int vertex2,
+				 int[] otherAttach, int attachCount) {
+	return Traversal.ForCurrentThread().findPath(graph, vertex1, vertex2,
+						     otherAttach, attachCount);
+    }
+
+    /**
+     * The CSR version of IsBipartite.  Colors the vertices by BFS layer,
+     * one component after another, starting with the given vertex, and
+     * fails as soon as an edge joins two vertices of the same color.
+     * 
+     * @param graph		The given graph
+     * @param vertex	The specified start vertex
+     * @return			True if graph bipartite, false o/w
+     */
+    public static boolean IsBipartite(CSRGraph graph, int vertex) {
+	int n = graph.numberOfVertices();
+	byte[] color = new byte[n];
+	int[] queue = new int[n];
+
+	for(int k = 0; k < n; ++k) {
+	    int start = (vertex + k) % n;
+	    if(color[start] != 0) {
+		continue;
+	    }
+
+	    // Run BFS and assign colors.
+	    int head = 0;
+	    int tail = 0;
+	    queue[tail++] = start;
+	    color[start] = 1;
+	    while(head < tail) {
+		int currentVertex = queue[head++];
+		for(int i = graph.edgeStart(currentVertex);
+		    i < graph.edgeEnd(currentVertex); ++i) {
+		    int neighbor = graph.target(i);
+		    if(color[neighbor] == 0) {
+			color[neighbor] = (byte) -color[currentVertex];
+			queue[tail++] = neighbor;
+		    } else if(color[neighbor] == color[currentVertex]) {
+			return false;
+		    }
+		}
+	    }
+	}
+
+	return true;
+    }
+
+    /**
+     * The CSR version of MakeInterlacementGraph.  The pieces are labelled
+     * with the vertices of the graph the cycle belongs to, as FindPieces
+     * returns them, and the interlacement graph is labelled with the
+     * indexes of the pieces in the list.
+     *
+     * Instead of walking the cycle for every pair of pieces, the positions
+     * where each piece attaches are found once and Interlacement finds
+     * the interlacing pairs from them with a sweep, which gives the same
+     * graph as the alternation count.
+     * 
+     * @param pieces  The pieces with respect to the cycle
+     * @param cycle	  The given separating cycle
+     * @return		  The interlacement graph
+     */
+    public static CSRGraph MakeInterlacementGraph(List<CSRGraph> pieces,
+						  int[] cycle) {
+	return Interlacement.Build(AttachmentPositions(pieces, cycle),
+				   cycle.length).toCSRGraph();
+    }
+
+    /**
+     * Determines whether the interlacement graph of the pieces is
+     * bipartite, without building it: the interlacing pairs go straight
+     * into a ParityUnionFind as Interlacement finds them, and the search
+     * stops at the first one that closes an odd cycle.
+     * 
+     * @param pieces  The pieces with respect to the cycle
+     * @param cycle	  The given separating cycle
+     * @return		  True if the interlacement graph is bipartite
+     */
+    public static boolean IsInterlacementBipartite(List<CSRGraph> pieces,
+						   int[] cycle) {
+	return Interlacement.IsBipartite(AttachmentPositions(pieces, cycle),
+					 cycle.length);
+    }
+
+    /**
+     * Finds where every piece attaches to the cycle.
+     *
+     * @param pieces	The pieces, labelled as FindPieces labels them
+     * @param cycle	The cycle
+     * @return		For every piece, the sorted positions on the cycle of
+     * 			its attachment vertices
+     */
+    public static int[][] AttachmentPositions(List<CSRGraph> pieces,
+					      int[] cycle) {
+	int maxLabel = 0;
+	for(int vertex : cycle) {
+	    maxLabel = Math.max(maxLabel, vertex);
+	}
+	int[][] attach = new int[pieces.size()][];
+	int[] positions = new int[cycle.length];
+
+	// For a few pieces, looking every cycle vertex up in every piece is
+	// cheaper than a table over all the labels.
+	if((long) pieces.size() * cycle.length <= maxLabel) {
+	    for(int i = 0; i < pieces.size(); ++i) {
+		CSRGraph piece = pieces.get(i);
+		int count = 0;
+		for(int lc = 0; lc < cycle.length; ++lc) {
+		    if(piece.indexOf(cycle[lc]) >= 0) {
+			positions[count++] = lc;
+		    }
+		}
+		attach[i] = Arrays.copyOf(positions, count);
+	    }
+	    return attach;
+	}
+
+	int[] position = new int[maxLabel + 1];
+	Arrays.fill(position, -1);
+	for(int lc = 0; lc < cycle.length; ++lc) {
+	    position[cycle[lc]] = lc;
+	}
+
+	for(int i = 0; i < pieces.size(); ++i) {
+	    CSRGraph piece = pieces.get(i);
+	    int count = 0;
+	    for(int v = 0; v < piece.numberOfVertices(); ++v) {
+		int label = piece.label(v);
+		if(label <= maxLabel && position[label] >= 0) {
+		    positions[count++] = position[label];
+		}
+	    }
+	    attach[i] = Arrays.copyOf(positions, count);
+	    Arrays.sort(attach[i]);
+	}
+	return attach;
+    }
+
+    /**
+     * The CSR version of FindPieces.  The pieces are returned as graphs
+     * labelled with the vertices of the given graph.  They are found by
+     * PieceDecomposition, which the engines use directly so that path
+     * pieces are never built.
+     * 
+     * @param graph	The given graph.
+     * @param cycle	The vertices of the cycle, in order
+     * @return		The pieces of the graph with respect to the cycle
+     */
+    public static List<CSRGraph> FindPieces(CSRGraph graph, int[] cycle) {
+	return PieceDecomposition.Of(graph, cycle).pieceGraphs();
+    }
+
+    /**
+     * Splits a graph into its biconnected components (blocks) with an
+     * iterative version of the Hopcroft-Tarjan algorithm: a DFS keeps the
+     * edges it has seen on a stack, and whenever no back edge from the
+     * subtree of a vertex climbs above its parent, the edges down to the
+     * tree edge into that vertex form a block.  Any graph is accepted,
+     * connected or not; every edge ends up in exactly one block, and a
+     * bridge is a block by itself.
+     * 
+     * A graph is planar exactly when all its blocks are, and a block needs
+     * at least nine edges (K3,3) to be nonplanar, so blocks smaller than
+     * minEdges can be skipped without ever being built.
+     * 
+     * @param graph	The given graph
+     * @param minEdges	Blocks with fewer edges are not returned
+     * @return		The blocks, labelled with the vertices of the graph
+     */
+    public static List<CSRGraph> BiconnectedComponents(CSRGraph graph,
+						       int minEdges) {
+	PlanarityMetrics.Span span = PlanarityMetrics.ENABLED ?
+	    PlanarityMetrics.Begin(PlanarityMetrics.Phase.BLOCKS, -1) : null;
+	List<CSRGraph> blocks = new ArrayList<CSRGraph>();
+	int n = graph.numberOfVertices();
+	int[] discovered = new int[n];
+	int[] low = new int[n];
+	int[] parent = new int[n];
+	int[] next = new int[n];
+	int[] stack = new int[n];
+	int[] edgeFrom = new int[graph.numberOfEdges()];
+	int[] edgeTo = new int[graph.numberOfEdges()];
+	int edgeTop = 0;
+	int time = 0;
+	Arrays.fill(discovered, -1);
+
+	for(int root = 0; root < n; ++root) {
+	    if(discovered[root] >= 0) {
+		continue;
+	    }
+	    discovered[root] = low[root] = time++;
+	    parent[root] = -1;
+	    next[root] = graph.edgeStart(root);
+	    int top = 0;
+	    stack[top++] = root;
+
+	    // Run DFS.
+	    while(top > 0) {
+		int v = stack[top-1];
+		if(next[v] < graph.edgeEnd(v)) {
+		    int w = graph.target(next[v]++);
+		    if(discovered[w] < 0) {
+			// A tree edge.
+			parent[w] = v;
+			discovered[w] = low[w] = time++;
+			next[w] = graph.edgeStart(w);
+			edgeFrom[edgeTop] = v;
+			edgeTo[edgeTop++] = w;
+			stack[top++] = w;
+		    } else if(w != parent[v] && discovered[w] < discovered[v]) {
+			// A back edge, seen from its lower end.
+			edgeFrom[edgeTop] = v;
+			edgeTo[edgeTop++] = w;
+			low[v] = Math.min(low[v], discovered[w]);
+		    }
+		    continue;
+		}
+
+		// All of v is done; pass its low point up to the parent.
+		--top;
+		int p = parent[v];
+		if(p < 0) {
+		    continue;
+		}
+		low[p] = Math.min(low[p], low[v]);
+
+		// If nothing below v climbs above p, the edges down to
+		// the tree edge p-v are a block.
+		if(low[v] >= discovered[p]) {
+		    int start = edgeTop - 1;
+		    while(edgeFrom[start] != p || edgeTo[start] != v) {
+			--start;
+		    }
+		    if(edgeTop - start >= minEdges) {
+			blocks.add(CSRGraph.fromEdges(
+			    Arrays.copyOfRange(edgeFrom, start, edgeTop),
+			    Arrays.copyOfRange(edgeTo, start, edgeTop),
+			    edgeTop - start));
+		    }
+		    edgeTop = start;
+		}
+	    }
+	}
+	if(span != null) {
+	    span.end(graph.numberOfEdges());
+	}
+	return blocks;
+    }
 }
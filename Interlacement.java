@@ -0,0 +1,363 @@
+/*
+ * Interlacement.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.util.Arrays;
+
+/**
+ * This class finds which pieces of a cycle interlace, given only where
+ * each piece attaches to the cycle, without comparing every pair.
+ *
+ * Walking around the cycle and counting alternations, as
+ * MakeInterlacementGraph always did, makes two pieces interlace exactly
+ * when the attachments of one do not all lie in a single closed segment
+ * between two consecutive attachments of the other.  Cut the cycle at
+ * position 0 and call [a, b] the span of a piece, from its first to its
+ * last attachment.  For a piece i with attachments p0 < p1 < ... < pk,
+ * and a piece j with a_i < a_j, let t be the first attachment of i after
+ * a_j.  Then i and j interlace exactly when b_j > p_t: if b_j <= b_i, j
+ * does not fit in the segment [p(t-1), p_t] of i, and otherwise the spans
+ * cross.  So piece i only has to look, for every t, at the pieces whose
+ * span starts in [p(t-1), p_t) (in (p0, p1) for t = 1) and ends after
+ * p_t, and every piece found that way interlaces with i.  Pieces that
+ * start at the same position as i are checked separately: those ending
+ * after p1 and no later than b_i interlace with it, except that two
+ * pieces with the same span do not interlace when one of them only
+ * attaches at the two ends.
+ *
+ * With the pieces sorted by span and a max tree over the span ends, each
+ * query costs O(log k) plus O(log k) per piece it reports, and no pair is
+ * reported twice, so the whole graph costs
+ * O((attachments + interlacement edges) log k + cycle length).
+ *
+ * The edges can also be handed one at a time to a ParityUnionFind
+ * instead of being collected, to find out whether the interlacement
+ * graph is bipartite without building it; the sweep then stops at the
+ * first edge that closes an odd cycle.  OddCycle also keeps the edges
+ * that joined two sets, a spanning forest of what was found, so that
+ * the odd cycle is the edge that closed it and the path in the forest
+ * between its ends.
+ *
+ * @author Matthew McCarty
+ */
+
+public final class Interlacement {
+
+    /**
+     * The number of pieces up to which they are sorted by insertion.
+     */
+    static final int SMALL = 32;
+
+    private final int[][] attach;
+    private final int[] order;
+    private final int[] starts;
+    private final int[] ends;
+    private final boolean[] inner;
+    private final int[] tree;
+    private final int size;
+    private final EdgeList edges;
+    private final ParityUnionFind parity;
+    private boolean odd;
+    private int added;
+    private int closedFrom;
+    private int closedTo;
+
+    /**
+     * Builds the interlacement graph of the pieces with the given
+     * attachments.
+     *
+     * @param attach		The attachment positions of every piece, each
+     * 				sorted in increasing order
+     * @param cycleLength	The length of the cycle
+     * @return			The pairs of interlacing pieces, by index
+     */
+    public static EdgeList Build(int[][] attach, int cycleLength) {
+	Interlacement interlacement =
+	    new Interlacement(attach, cycleLength, new EdgeList(), null);
+	for(int i = 0; i < attach.length; ++i) {
+	    interlacement.report(i);
+	}
+	return interlacement.edges;
+    }
+
+    /**
+     * Determines whether the interlacement graph of the pieces with the
+     * given attachments is bipartite, stopping as soon as it is not.
+     *
+     * @param attach		The attachment positions of every piece, each
+     * 				sorted in increasing order
+     * @param cycleLength	The length of the cycle
+     * @return			True if the interlacement graph is bipartite
+     */
+    public static boolean IsBipartite(int[][] attach, int cycleLength) {
+	Interlacement interlacement =
+	    new Interlacement(attach, cycleLength, null,
+			      new ParityUnionFind(attach.length));
+	for(int i = 0; i < attach.length && !interlacement.odd; ++i) {
+	    interlacement.report(i);
+	}
+	if(PlanarityMetrics.ENABLED) {
+	    PlanarityMetrics.INTERLACEMENT_EDGES.record(interlacement.added);
+	}
+	return !interlacement.odd;
+    }
+
+    /**
+     * Finds an odd cycle in the interlacement graph of the pieces with the
+     * given attachments, stopping as soon as there is one.
+     *
+     * @param attach		The attachment positions of every piece, each
+     * 				sorted in increasing order
+     * @param cycleLength	The length of the cycle
+     * @return			The pieces of an odd cycle, in order around
+     * 				it, or null if the interlacement graph is
+     * 				bipartite
+     */
+    public static int[] OddCycle(int[][] attach, int cycleLength) {
+	Interlacement interlacement =
+	    new Interlacement(attach, cycleLength, new EdgeList(),
+			      new ParityUnionFind(attach.length));
+	for(int i = 0; i < attach.length && !interlacement.odd; ++i) {
+	    interlacement.report(i);
+	}
+	if(!interlacement.odd) {
+	    return null;
+	}
+
+	// The ends of the closing edge have the same color, so the path
+	// between them in the forest has an even number of edges.
+	CSRGraph forest = interlacement.edges.toCSRGraph();
+	int[] path = GraphUtilities.FindPath(
+	    forest, forest.indexOf(interlacement.closedFrom),
+	    forest.indexOf(interlacement.closedTo), new int[0], 0);
+	int[] cycle = new int[path.length];
+	for(int i = 0; i < path.length; ++i) {
+	    cycle[i] = forest.label(path[i]);
+	}
+	return cycle;
+    }
+
+    /**
+     * Sorts the pieces by span and builds the max tree.  The edges found
+     * go to the edge list if there is one, and to the union-find if
+     * there is one; with both, only those that join two sets of the
+     * union-find go to the list.
+     */
+    private Interlacement(int[][] attach, int cycleLength, EdgeList edges,
+			  ParityUnionFind parity) {
+	int k = attach.length;
+	this.attach = attach;
+	this.edges = edges;
+	this.parity = parity;
+	inner = new boolean[k];
+	for(int i = 0; i < k; ++i) {
+	    inner[i] = attach[i].length > 2;
+	}
+
+	// Sort by start, then end, then pieces attaching between their
+	// ends first, then index.  Stable counting sorts from the last key
+	// to the first cost O(k + cycle length), so a few pieces on a long
+	// cycle are sorted by insertion instead.
+	int[] byIndex = new int[k];
+	for(int i = 0; i < k; ++i) {
+	    byIndex[i] = i;
+	}
+	if(k <= SMALL) {
+	    for(int i = 1; i < k; ++i) {
+		int item = byIndex[i];
+		int j = i;
+		for(; j > 0 && compare(byIndex[j-1], item) > 0; --j) {
+		    byIndex[j] = byIndex[j-1];
+		}
+		byIndex[j] = item;
+	    }
+	    order = byIndex;
+	} else {
+	    int[] key = new int[k];
+	    for(int i = 0; i < k; ++i) {
+		key[i] = inner[i] ? 0 : 1;
+	    }
+	    int[] sorted = CountingSort(byIndex, key, 2);
+	    for(int i = 0; i < k; ++i) {
+		key[i] = Last(attach[i]);
+	    }
+	    sorted = CountingSort(sorted, key, cycleLength);
+	    for(int i = 0; i < k; ++i) {
+		key[i] = First(attach[i]);
+	    }
+	    order = CountingSort(sorted, key, cycleLength);
+	}
+
+	starts = new int[k];
+	ends = new int[k];
+	for(int r = 0; r < k; ++r) {
+	    starts[r] = First(attach[order[r]]);
+	    ends[r] = Last(attach[order[r]]);
+	}
+
+	int leaves = 1;
+	while(leaves < k) {
+	    leaves <<= 1;
+	}
+	size = leaves;
+	tree = new int[2 * leaves];
+	Arrays.fill(tree, -1);
+	for(int r = 0; r < k; ++r) {
+	    tree[leaves + r] = ends[r];
+	}
+	for(int node = leaves - 1; node > 0; --node) {
+	    tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+	}
+    }
+
+    /**
+     * Adds the edges from piece i to the pieces it interlaces with that
+     * start after it, and to those that start where it does and end no
+     * later.
+     */
+    private void report(int i) {
+	int[] p = attach[i];
+	if(p.length < 2) {
+	    return;
+	}
+
+	for(int t = 1; t < p.length && !odd; ++t) {
+	    int from = Rank(starts, t == 1 ? p[0] + 1 : p[t-1]);
+	    int to = Rank(starts, p[t]);
+	    reportAbove(i, 1, 0, size, from, to, p[t]);
+	}
+
+	// Pieces with the same start: those ending in (p1, b_i), then
+	// those with the same span that also attach between the ends.
+	if(inner[i]) {
+	    int b = p[p.length - 1];
+	    int from = Rank(starts, p[0]);
+	    int to = Rank(starts, p[0] + 1);
+	    int r = Rank(ends, from, to, p[1] + 1);
+	    for(; r < to && ends[r] < b && !odd; ++r) {
+		add(i, order[r]);
+	    }
+	    for(; r < to && ends[r] == b && inner[order[r]] && !odd; ++r) {
+		if(order[r] > i) {
+		    add(i, order[r]);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Adds an edge from piece i to every piece ranked in [from, to)
+     * inside the given tree node whose span ends after the threshold.
+     */
+    private void reportAbove(int i, int node, int nodeFrom, int nodeTo,
+			     int from, int to, int threshold) {
+	if(odd || nodeTo <= from || to <= nodeFrom || tree[node] <= threshold) {
+	    return;
+	}
+	if(node >= size) {
+	    add(i, order[node - size]);
+	    return;
+	}
+	int middle = (nodeFrom + nodeTo) >>> 1;
+	reportAbove(i, 2 * node, nodeFrom, middle, from, to, threshold);
+	reportAbove(i, 2 * node + 1, middle, nodeTo, from, to, threshold);
+    }
+
+    /**
+     * Hands an edge between two pieces to the edge list, the union-find
+     * or both.
+     */
+    private void add(int i, int j) {
+	++added;
+	if(parity == null) {
+	    edges.addEdge(i, j);
+	    return;
+	}
+	if(edges != null && parity.find(i) != parity.find(j)) {
+	    edges.addEdge(i, j);
+	}
+	if(!parity.union(i, j)) {
+	    odd = true;
+	    closedFrom = i;
+	    closedTo = j;
+	}
+    }
+
+    /**
+     * Returns the first index of the sorted array holding a value of at
+     * least the given one.
+     */
+    private static int Rank(int[] sorted, int value) {
+	return Rank(sorted, 0, sorted.length, value);
+    }
+
+    /**
+     * Returns the first index in [from, to) of the sorted range holding a
+     * value of at least the given one, or to if there is none.
+     */
+    private static int Rank(int[] sorted, int from, int to, int value) {
+	while(from < to) {
+	    int middle = (from + to) >>> 1;
+	    if(sorted[middle] < value) {
+		from = middle + 1;
+	    } else {
+		to = middle;
+	    }
+	}
+	return from;
+    }
+
+    /**
+     * Compares two pieces in the order of the sweep.
+     */
+    private int compare(int i, int j) {
+	if(First(attach[i]) != First(attach[j])) {
+	    return First(attach[i]) < First(attach[j]) ? -1 : 1;
+	}
+	if(Last(attach[i]) != Last(attach[j])) {
+	    return Last(attach[i]) < Last(attach[j]) ? -1 : 1;
+	}
+	if(inner[i] != inner[j]) {
+	    return inner[i] ? -1 : 1;
+	}
+	return i < j ? -1 : (i > j ? 1 : 0);
+    }
+
+    /**
+     * Returns the first attachment of a piece.
+     */
+    private static int First(int[] positions) {
+	return positions.length > 0 ? positions[0] : 0;
+    }
+
+    /**
+     * Returns the last attachment of a piece.
+     */
+    private static int Last(int[] positions) {
+	return positions.length > 0 ? positions[positions.length - 1] : 0;
+    }
+
+    /**
+     * Stably sorts the items by their keys, which are in [0, range).
+     */
+    private static int[] CountingSort(int[] items, int[] key, int range) {
+	int[] count = new int[range + 1];
+	for(int item : items) {
+	    ++count[key[item] + 1];
+	}
+	for(int v = 0; v < range; ++v) {
+	    count[v+1] += count[v];
+	}
+	int[] sorted = new int[items.length];
+	for(int item : items) {
+	    sorted[count[key[item]]++] = item;
+	}
+	return sorted;
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Kernel.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.util.Arrays;
+
+/**
+ * This class shrinks a graph without changing whether it is planar.
+ * Vertices of degree 0 or 1 are pruned, since a tree hanging off a graph
+ * can always be drawn, and a vertex of degree 2 is contracted, its two
+ * edges replaced by one between its neighbors, since subdividing an edge
+ * does not change planarity.  Should its neighbors already be joined,
+ * the two edges are merged into that one.  A component that is only a
+ * cycle disappears altogether.
+ *
+ * All of it is one pass over a worklist, in O(n+m) expected time.  The
+ * graph is held as lists of edges per vertex that edges can be taken
+ * out of and put into, with a hash table to tell whether two vertices
+ * are joined.  The worklist starts with the vertices of degree 2 or less,
+ * and a vertex whose degree falls to 2 or less as its neighbors go is
+ * added to it, so when it runs dry every vertex left has degree 3 or
+ * more.  The CSRGraph of the kernel is built once at the end; it keeps
+ * the labels of the given graph.
+ *
+ * Given a cycle as well, the kernel keeps the cycle as the vertices of
+ * it that are left, in order.  A vertex of the cycle is only contracted
+ * while more than three are left, so a subproblem can be reduced before
+ * it is tested.
+ *
+ * @author Matthew McCarty
+ */
+
+public final class Kernel {
+    private final CSRGraph graph;
+    private final int[] cycle;
+    private final int verticesBefore;
+    private final int edgesBefore;
+    private int pruned;
+    private int contracted;
+    private int merged;
+
+    /**
+     * Reduces a graph.
+     *
+     * @param graph	The given graph
+     * @return		The kernel, with how much it took away
+     */
+    public static Kernel Reduce(CSRGraph graph) {
+	return new Kernel(graph, null);
+    }
+
+    /**
+     * Reduces a graph together with a cycle in it.
+     *
+     * @param graph	The given graph
+     * @param cycle	The vertices of a cycle in the graph, in order
+     * @return		The kernel; its cycle is the given one with the
+     * 			contracted vertices left out
+     */
+    public static Kernel Reduce(CSRGraph graph, int[] cycle) {
+	return new Kernel(graph, cycle);
+    }
+
+    /**
+     * Works through the vertices of degree 2 or less until none is left.
+     */
+    private Kernel(CSRGraph graph, int[] cycle) {
+	this.verticesBefore = graph.numberOfVertices();
+	this.edgesBefore = graph.numberOfEdges();
+	PlanarityMetrics.Span span = PlanarityMetrics.ENABLED ?
+	    PlanarityMetrics.Begin(PlanarityMetrics.Phase.KERNEL, -1) : null;
+
+	int n = graph.numberOfVertices();
+	Edges edges = new Edges(graph);
+	boolean[] onCycle = new boolean[n];
+	int cycleLeft = 0;
+	if(cycle != null) {
+	    for(int v : cycle) {
+		onCycle[v] = true;
+	    }
+	    cycleLeft = cycle.length;
+	}
+
+	boolean[] removed = new boolean[n];
+	boolean[] listed = new boolean[n];
+	int[] work = new int[n];
+	int top = 0;
+	for(int v = 0; v < n; ++v) {
+	    if(edges.degree[v] <= 2) {
+		listed[v] = true;
+		work[top++] = v;
+	    }
+	}
+	int[] ends = new int[2];
+	while(top > 0) {
+	    int v = work[--top];
+	    listed[v] = false;
+	    int degree = edges.degree[v];
+	    if(degree == 2 && onCycle[v] && cycleLeft <= 3) {
+		continue;
+	    }
+
+	    // Take v out, and join its neighbors if it had two.
+	    int count = 0;
+	    while(edges.degree[v] > 0) {
+		int e = edges.first(v);
+		int w = edges.other(e, v);
+		edges.remove(e);
+		ends[count++] = w;
+	    }
+	    removed[v] = true;
+	    if(degree <= 1) {
+		++pruned;
+	    } else {
+		++contracted;
+		if(onCycle[v]) {
+		    --cycleLeft;
+		}
+		if(edges.find(ends[0], ends[1]) >= 0) {
+		    ++merged;
+		} else {
+		    edges.add(ends[0], ends[1]);
+		}
+	    }
+	    for(int i = 0; i < count; ++i) {
+		int w = ends[i];
+		if(!listed[w] && edges.degree[w] <= 2) {
+		    listed[w] = true;
+		    work[top++] = w;
+		}
+	    }
+	}
+
+	// Build the kernel from the edges left.
+	EdgeList left = new EdgeList(edges.size);
+	for(int e = 0; e < edges.used; ++e) {
+	    if(edges.from[e] >= 0) {
+		left.addEdge(graph.label(edges.from[e]),
+			     graph.label(edges.to[e]));
+	    }
+	}
+	this.graph = left.toCSRGraph();
+	if(cycle != null) {
+	    int[] kept = new int[cycleLeft];
+	    int length = 0;
+	    for(int v : cycle) {
+		if(!removed[v]) {
+		    kept[length++] = this.graph.indexOf(graph.label(v));
+		}
+	    }
+	    this.cycle = kept;
+	} else {
+	    this.cycle = null;
+	}
+	if(span != null) {
+	    span.end(edgesBefore);
+	}
+    }
+
+    /**
+     * Returns the reduced graph.
+     *
+     * @return	The kernel, labelled as the given graph was
+     */
+    public CSRGraph graph() {
+	return graph;
+    }
+
+    /**
+     * Returns the cycle in the reduced graph.
+     *
+     * @return	The vertices left of the given cycle, in order, or null
+     * 		if no cycle was given
+     */
+    public int[] cycle() {
+	return cycle;
+    }
+
+    /**
+     * Returns the number of vertices the reduction took away.
+     *
+     * @return	The number of vertices removed
+     */
+    public int removedVertices() {
+	return verticesBefore - graph.numberOfVertices();
+    }
+
+    /**
+     * Returns the number of edges the reduction took away.
+     *
+     * @return	The number of edges removed
+     */
+    public int removedEdges() {
+	return edgesBefore - graph.numberOfEdges();
+    }
+
+    /**
+     * Describes how much the graph shrank.
+     *
+     * @return	One line with the sizes before and after
+     */
+    public String toString() {
+	return "kernel: " + verticesBefore + " vertices, " + edgesBefore
+	    + " edges -> " + graph.numberOfVertices() + " vertices, "
+	    + graph.numberOfEdges() + " edges (" + pruned + " pruned, "
+	    + contracted + " contracted, " + merged + " edges merged)";
+    }
+
+    /**
+     * The edges of a graph as it is being reduced: for every edge its two
+     * ends, or -1 once it is taken out, the edges of every vertex in a
+     * doubly linked list, and a hash table from the ends of every edge to
+     * the edge.  Half-edge 2e is edge e seen from its first end and 2e + 1
+     * from its second.  Every contraction adds at most one edge, so room
+     * for m + n of them is enough, and the table never fills.
+     */
+    private static final class Edges {
+	static final long EMPTY = -1;
+	static final long GONE = -2;
+
+	final int[] from;
+	final int[] to;
+	final int[] degree;
+	final int[] head;
+	final int[] next;
+	final int[] previous;
+	final long[] keys;
+	final int[] values;
+	int used;
+	int size;
+
+	Edges(CSRGraph graph) {
+	    int n = graph.numberOfVertices();
+	    int capacity = graph.numberOfEdges() + n;
+	    from = new int[capacity];
+	    to = new int[capacity];
+	    degree = new int[n];
+	    head = new int[n];
+	    next = new int[2 * capacity];
+	    previous = new int[2 * capacity];
+	    Arrays.fill(head, -1);
+	    int slots = Integer.highestOneBit(Math.max(2 * capacity, 2)) * 2;
+	    keys = new long[slots];
+	    values = new int[slots];
+	    Arrays.fill(keys, EMPTY);
+	    for(int v = 0; v < n; ++v) {
+		for(int k = graph.edgeStart(v); k < graph.edgeEnd(v); ++k) {
+		    if(v < graph.target(k)) {
+			add(v, graph.target(k));
+		    }
+		}
+	    }
+	}
+
+	/**
+	 * Returns the first edge of a vertex that has one.
+	 */
+	int first(int v) {
+	    return head[v] >>> 1;
+	}
+
+	/**
+	 * Returns the end of an edge other than the given one.
+	 */
+	int other(int e, int v) {
+	    return from[e] == v ? to[e] : from[e];
+	}
+
+	/**
+	 * Returns the edge joining two vertices, or -1 if there is none.
+	 */
+	int find(int u, int v) {
+	    long key = Key(u, v);
+	    int mask = keys.length - 1;
+	    for(int slot = Slot(key, mask); keys[slot] != EMPTY;
+		slot = (slot + 1) & mask) {
+		if(keys[slot] == key) {
+		    return values[slot];
+		}
+	    }
+	    return -1;
+	}
+
+	/**
+	 * Adds an edge between two vertices not yet joined.
+	 */
+	void add(int u, int v) {
+	    int e = used++;
+	    from[e] = u;
+	    to[e] = v;
+	    link(2 * e, u);
+	    link(2 * e + 1, v);
+	    ++size;
+	    long key = Key(u, v);
+	    int mask = keys.length - 1;
+	    int slot = Slot(key, mask);
+	    while(keys[slot] != EMPTY) {
+		slot = (slot + 1) & mask;
+	    }
+	    keys[slot] = key;
+	    values[slot] = e;
+	}
+
+	/**
+	 * Takes an edge out.
+	 */
+	void remove(int e) {
+	    long key = Key(from[e], to[e]);
+	    int mask = keys.length - 1;
+	    int slot = Slot(key, mask);
+	    while(keys[slot] != key) {
+		slot = (slot + 1) & mask;
+	    }
+	    keys[slot] = GONE;
+	    unlink(2 * e, from[e]);
+	    unlink(2 * e + 1, to[e]);
+	    from[e] = -1;
+	    to[e] = -1;
+	    --size;
+	}
+
+	private void link(int half, int v) {
+	    previous[half] = -1;
+	    next[half] = head[v];
+	    if(head[v] >= 0) {
+		previous[head[v]] = half;
+	    }
+	    head[v] = half;
+	    ++degree[v];
+	}
+
+	private void unlink(int half, int v) {
+	    if(previous[half] >= 0) {
+		next[previous[half]] = next[half];
+	    } else {
+		head[v] = next[half];
+	    }
+	    if(next[half] >= 0) {
+		previous[next[half]] = previous[half];
+	    }
+	    --degree[v];
+	}
+
+	private static long Key(int u, int v) {
+	    return u < v ? ((long) u << 32) | v : ((long) v << 32) | u;
+	}
+
+	private static int Slot(long key, int mask) {
+	    return (int) GraphFingerprint.Mix(key) & mask;
+	}
+    }
+}
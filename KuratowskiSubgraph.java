@@ -0,0 +1,557 @@
+/*
+ * KuratowskiSubgraph.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * This class is a certificate of nonplanarity: a subgraph that is a
+ * subdivision of K5 or K3,3, given as a list of edges.
+ *
+ * Find builds it from the conflict the pieces engine runs into.  It runs
+ * the recursion of PlanarityDriver on the first nonplanar block, without
+ * the 3n-6 shortcut, until the interlacement graph of a cycle has an odd
+ * cycle.  The cycle together with the pieces on that odd cycle is
+ * already nonplanar, since pieces that interlace in an odd cycle cannot
+ * be put on two sides of it.  Of each such piece only what shows that
+ * it interlaces with its two neighbors on the odd cycle is kept: three
+ * attachments it shares with a neighbor, or two of its attachments that
+ * alternate with two of the neighbor's, joined by paths through the
+ * piece.  A last pass then drops from what is left every chain of
+ * degree-2 vertices whose removal leaves it nonplanar; a nonplanar graph
+ * from which no chain can be dropped is a Kuratowski subdivision.  The
+ * pass tests the chains with LRPlanarity, but on the graph with every
+ * chain contracted to an edge, whose size is only the number c of
+ * chains: each of the pieces on the odd cycle adds a few, however long
+ * the cycle and the paths are.  Find thus tests each block once and the
+ * witness c times, in O(n + m + c^2) time in all besides the recursion,
+ * and never tests the block again with edges deleted.
+ *
+ * Verify checks a certificate in O(n + m log d) time: its edges must be
+ * distinct edges of the graph, and with its degree-2 vertices suppressed
+ * it must be K5 or K3,3.
+ *
+ * @author Matthew McCarty
+ */
+
+public final class KuratowskiSubgraph {
+    private final int[] edges;
+    private final boolean k5;
+
+    private KuratowskiSubgraph(int[] edges, boolean k5) {
+	this.edges = edges;
+	this.k5 = k5;
+    }
+
+    /**
+     * A cycle whose pieces are being worked through.
+     */
+    private static final class Frame {
+	final PieceDecomposition pieces;
+	int next;
+
+	Frame(PieceDecomposition pieces, int next) {
+	    this.pieces = pieces;
+	    this.next = next;
+	}
+    }
+
+    /**
+     * Finds a Kuratowski subgraph of a graph.
+     *
+     * @param graph	The given graph
+     * @return		The subgraph, or null if the graph is planar
+     */
+    public static KuratowskiSubgraph Find(CSRGraph graph) {
+	// A graph is nonplanar exactly when one of its blocks is.
+	for(CSRGraph block : GraphUtilities.BiconnectedComponents(graph,
+								    9)) {
+	    if(LRPlanarity.IsPlanar(block)) {
+		continue;
+	    }
+	    int[] found = Minimize(Conflict(block));
+	    int[] edges = new int[found.length];
+	    for(int i = 0; i < found.length; ++i) {
+		edges[i] = block.label(found[i]);
+	    }
+	    return new KuratowskiSubgraph(edges,
+					  Classify(graph, edges) == 5);
+	}
+	return null;
+    }
+
+    /**
+     * Returns the edges of the subgraph.
+     *
+     * @return	The vertices of the graph the edges join, two per edge
+     */
+    public int[] edges() {
+	return edges;
+    }
+
+    /**
+     * Returns the number of edges of the subgraph.
+     *
+     * @return	The number of edges
+     */
+    public int numberOfEdges() {
+	return edges.length / 2;
+    }
+
+    /**
+     * Determines whether the subgraph is a subdivision of K5 rather than
+     * of K3,3.
+     *
+     * @return	True for K5
+     */
+    public boolean isK5() {
+	return k5;
+    }
+
+    /**
+     * Writes out the edges, one line "u v" per edge, with the labels of
+     * the graph or, if given, the interner's labels for them.
+     *
+     * @param graph	The graph the subgraph was found in
+     * @param interner	The interner the graph's labels are ids of, or
+     * 			null
+     * @return		The lines
+     */
+    public String format(CSRGraph graph, VertexInterner interner) {
+	StringBuilder text = new StringBuilder();
+	for(int i = 0; i < edges.length; i += 2) {
+	    if(interner != null) {
+		text.append(interner.format(
+		    graph, new int[] { edges[i], edges[i+1] }));
+	    } else {
+		text.append(graph.label(edges[i])).append(' ');
+		text.append(graph.label(edges[i+1]));
+	    }
+	    text.append(String.format("%n"));
+	}
+	return text.toString();
+    }
+
+    public String toString() {
+	return (k5 ? "K5" : "K3,3") + " subdivision, " + numberOfEdges() +
+	    " edges";
+    }
+
+    /**
+     * Determines whether a list of edges is a Kuratowski subgraph of a
+     * graph.
+     *
+     * @param graph	The given graph
+     * @param edges	The vertices the edges join, two per edge
+     * @return		True if the edges are distinct edges of the graph
+     * 			and form a subdivision of K5 or K3,3
+     */
+    public static boolean Verify(CSRGraph graph, int[] edges) {
+	return Classify(graph, edges) != 0;
+    }
+
+    /**
+     * Tells what the edges form.
+     *
+     * @return	5 for a subdivision of K5, 6 for one of K3,3, and 0 if
+     * 		they form neither or are not distinct edges of the graph
+     */
+    private static int Classify(CSRGraph graph, int[] edges) {
+	if(edges == null || edges.length % 2 != 0) {
+	    return 0;
+	}
+	int n = graph.numberOfVertices();
+	for(int i = 0; i < edges.length; i += 2) {
+	    if(edges[i] < 0 || edges[i] >= n || edges[i+1] < 0 ||
+	       edges[i+1] >= n || edges[i] == edges[i+1] ||
+	       !graph.containsEdge(edges[i], edges[i+1])) {
+		return 0;
+	    }
+	}
+	EdgeList list = new EdgeList(edges.length / 2);
+	for(int i = 0; i < edges.length; i += 2) {
+	    list.addEdge(edges[i], edges[i+1]);
+	}
+	CSRGraph h = list.toCSRGraph();
+	if(h.numberOfEdges() != edges.length / 2) {
+	    return 0;
+	}
+
+	// Number the branch vertices; the others must have degree 2.
+	int[] branch = new int[h.numberOfVertices()];
+	int branches = 0;
+	int degree = 0;
+	for(int v = 0; v < h.numberOfVertices(); ++v) {
+	    branch[v] = -1;
+	    if(h.degree(v) == 2) {
+		continue;
+	    }
+	    if(h.degree(v) < 3 || (degree != 0 && h.degree(v) != degree)) {
+		return 0;
+	    }
+	    degree = h.degree(v);
+	    branch[v] = branches++;
+	}
+	boolean isK5 = degree == 4 && branches == 5;
+	if(!isK5 && !(degree == 3 && branches == 6)) {
+	    return 0;
+	}
+
+	// Follow the chain from every branch vertex along each of its
+	// edges.  Every chain must end at another branch vertex, no two
+	// chains may join the same pair, and every other vertex must be on
+	// a chain, so that each is met twice, once from either end.
+	boolean[] joined = new boolean[branches * branches];
+	int inner = 0;
+	for(int u = 0; u < h.numberOfVertices(); ++u) {
+	    if(branch[u] < 0) {
+		continue;
+	    }
+	    for(int k = h.edgeStart(u); k < h.edgeEnd(u); ++k) {
+		int previous = u;
+		int current = h.target(k);
+		while(branch[current] < 0) {
+		    ++inner;
+		    int next = h.target(h.edgeStart(current));
+		    if(next == previous) {
+			next = h.target(h.edgeStart(current) + 1);
+		    }
+		    previous = current;
+		    current = next;
+		}
+		int a = branch[u];
+		int b = branch[current];
+		if(a == b || joined[a * branches + b]) {
+		    return 0;
+		}
+		joined[a * branches + b] = true;
+	    }
+	}
+	if(inner != 2 * (h.numberOfVertices() - branches)) {
+	    return 0;
+	}
+	if(isK5) {
+	    return 5;
+	}
+
+	// A cubic graph on six vertices is K3,3 only if it is bipartite;
+	// the other one is the prism.
+	int[] side = new int[branches];
+	side[0] = 1;
+	for(int pass = 0; pass < branches; ++pass) {
+	    for(int a = 0; a < branches; ++a) {
+		for(int b = 0; b < branches; ++b) {
+		    if(joined[a * branches + b] && side[a] != 0) {
+			if(side[b] == side[a]) {
+			    return 0;
+			}
+			side[b] = -side[a];
+		    }
+		}
+	    }
+	}
+	return 6;
+    }
+
+    /**
+     * Runs the pieces recursion on a nonplanar block until it finds an
+     * interlacement graph with an odd cycle.
+     *
+     * @return	The edges of the cycle and of what is kept of the pieces
+     * 		on the odd cycle
+     */
+    private static EdgeList Conflict(CSRGraph block) {
+	int[] cycle = TestPlanarity.FindSeparatingCycle(block);
+	ArrayDeque<Frame> stack = new ArrayDeque<Frame>();
+	SubgraphView view = SubgraphView.Whole(block);
+	while(cycle != null) {
+	    PieceDecomposition pieces = PieceDecomposition.Of(view, cycle);
+	    int[] odd = Interlacement.OddCycle(pieces.attachments(),
+					       cycle.length);
+	    if(odd != null) {
+		return Witness(pieces, odd);
+	    }
+	    int first = NextNonPath(pieces, 0);
+	    if(first < pieces.numberOfPieces()) {
+		stack.push(new Frame(pieces, first));
+	    }
+
+	    cycle = null;
+	    if(!stack.isEmpty()) {
+		Frame frame = stack.peek();
+		int piece = frame.next;
+		frame.next = NextNonPath(frame.pieces, piece + 1);
+		if(frame.next == frame.pieces.numberOfPieces()) {
+		    stack.pop();
+		}
+		Subproblem next = Subproblem.ForPiece(frame.pieces, piece);
+		view = next.view;
+		cycle = next.cycle;
+	    }
+	}
+
+	throw new IllegalStateException(
+	    "No interlacement conflict in a nonplanar block.");
+    }
+
+    /**
+     * Returns the first piece from the given one on that is not a path,
+     * or the number of pieces if there is none.
+     */
+    private static int NextNonPath(PieceDecomposition pieces, int piece) {
+	while(piece < pieces.numberOfPieces() && pieces.isPath(piece)) {
+	    ++piece;
+	}
+	return piece;
+    }
+
+    /**
+     * Keeps the cycle and, of every piece on the odd cycle, the
+     * attachments that show it interlaces with its two neighbors there,
+     * joined by paths through the piece.
+     */
+    private static EdgeList Witness(PieceDecomposition pieces, int[] odd) {
+	int[] cycle = pieces.cycle();
+	EdgeList edges = new EdgeList();
+	for(int i = 0; i < cycle.length; ++i) {
+	    edges.addEdge(cycle[i], cycle[(i+1) % cycle.length]);
+	}
+
+	// keep[i] holds the positions piece odd[i] must still attach at.
+	int[][] keep = new int[odd.length][0];
+	for(int i = 0; i < odd.length; ++i) {
+	    int j = (i + 1) % odd.length;
+	    int[][] shown = Interlace(pieces.attachments(odd[i]),
+				      pieces.attachments(odd[j]));
+	    Arrays.sort(shown[0]);
+	    Arrays.sort(shown[1]);
+	    keep[i] = Union(keep[i], shown[0]);
+	    keep[j] = Union(keep[j], shown[1]);
+	}
+
+	for(int i = 0; i < odd.length; ++i) {
+	    CSRGraph piece = pieces.pieceGraph(odd[i]);
+	    int[] attach = pieces.attachments(odd[i]);
+	    if(piece.numberOfEdges() == 1) {
+		edges.addEdge(piece.label(0), piece.label(1));
+		continue;
+	    }
+
+	    // Join the first kept attachment to each of the others by a
+	    // path that stays off the cycle in between.
+	    int from = piece.indexOf(cycle[keep[i][0]]);
+	    for(int t = 1; t < keep[i].length; ++t) {
+		int to = piece.indexOf(cycle[keep[i][t]]);
+		int[] avoid = new int[attach.length];
+		int count = 0;
+		for(int position : attach) {
+		    int v = piece.indexOf(cycle[position]);
+		    if(v != from && v != to) {
+			avoid[count++] = v;
+		    }
+		}
+		int[] path = GraphUtilities.FindPath(piece, from, to, avoid,
+						     count);
+		for(int p = 0; p + 1 < path.length; ++p) {
+		    edges.addEdge(piece.label(path[p]),
+				  piece.label(path[p+1]));
+		}
+	    }
+	}
+	return edges;
+    }
+
+    /**
+     * Finds attachments that show two pieces interlace: three positions
+     * they share, or two positions of each that alternate around the
+     * cycle.
+     *
+     * @param p	The attachment positions of one piece, in increasing
+     * 		order
+     * @param q	Those of the other
+     * @return	The positions to keep of each, in no particular order
+     */
+    private static int[][] Interlace(int[] p, int[] q) {
+	int[] shared = new int[3];
+	int count = 0;
+	for(int i = 0, j = 0; i < p.length && j < q.length && count < 3; ) {
+	    if(p[i] < q[j]) {
+		++i;
+	    } else if(p[i] > q[j]) {
+		++j;
+	    } else {
+		shared[count++] = p[i];
+		++i;
+		++j;
+	    }
+	}
+	if(count == 3) {
+	    return new int[][] { shared, shared.clone() };
+	}
+
+	int[] alternating = Alternating(p, q);
+	if(alternating != null) {
+	    return new int[][] { { alternating[0], alternating[1] },
+				 { alternating[2], alternating[3] } };
+	}
+	alternating = Alternating(q, p);
+	if(alternating != null) {
+	    return new int[][] { { alternating[2], alternating[3] },
+				 { alternating[0], alternating[1] } };
+	}
+	throw new IllegalStateException("Pieces do not interlace.");
+    }
+
+    /**
+     * Looks for an attachment of q strictly between two consecutive
+     * attachments of p, and another attachment of q off the arc between
+     * those two.
+     *
+     * @return	The two positions of p and the two of q, or null if there
+     * 		are none
+     */
+    private static int[] Alternating(int[] p, int[] q) {
+	for(int y : q) {
+	    int i = Arrays.binarySearch(p, y);
+	    if(i >= 0) {
+		continue;
+	    }
+	    i = -i - 1;
+
+	    // y lies in the arc from p[i-1] to p[i], which wraps around the
+	    // end of the cycle if y is before p[0] or after the last one.
+	    int low = p[(i + p.length - 1) % p.length];
+	    int high = p[i % p.length];
+	    for(int w : q) {
+		boolean off = low < high ? w < low || w > high
+		    : w > high && w < low;
+		if(off) {
+		    return new int[] { low, high, y, w };
+		}
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Returns the positions in either of two sorted arrays, sorted.
+     */
+    private static int[] Union(int[] a, int[] b) {
+	int[] union = new int[a.length + b.length];
+	int count = 0;
+	for(int i = 0, j = 0; i < a.length || j < b.length; ) {
+	    if(j == b.length || (i < a.length && a[i] < b[j])) {
+		union[count++] = a[i++];
+	    } else if(i == a.length || b[j] < a[i]) {
+		union[count++] = b[j++];
+	    } else {
+		union[count++] = a[i++];
+		++j;
+	    }
+	}
+	return Arrays.copyOf(union, count);
+    }
+
+    /**
+     * Drops every chain of degree-2 vertices whose removal leaves the
+     * graph nonplanar.  A chain that was needed stays needed as more are
+     * dropped, so one pass is enough.  Each test is run on the graph of
+     * the chains still kept, each contracted to an edge between its ends.
+     *
+     * @param edges	The edges of a nonplanar graph with no vertex of
+     * 			degree 1
+     * @return		The vertices the edges that are left join, two per
+     * 			edge
+     */
+    private static int[] Minimize(EdgeList edges) {
+	CSRGraph h = edges.toCSRGraph();
+	int n = h.numberOfVertices();
+	int slots = 2 * h.numberOfEdges();
+
+	// Split the graph into its chains, from every vertex whose degree
+	// is not 2 along each of its edges.  The halves of the edges of
+	// chain c are in path[start[c]] up to path[start[c+1] - 1].
+	boolean[] walked = new boolean[slots];
+	int[] path = new int[slots];
+	int[] start = new int[h.numberOfEdges() + 1];
+	int[] from = new int[h.numberOfEdges()];
+	int[] to = new int[h.numberOfEdges()];
+	int chains = 0;
+	int length = 0;
+	for(int u = 0; u < n; ++u) {
+	    if(h.degree(u) == 2) {
+		continue;
+	    }
+	    for(int k = h.edgeStart(u); k < h.edgeEnd(u); ++k) {
+		if(walked[k]) {
+		    continue;
+		}
+		start[chains] = length;
+		from[chains] = u;
+		int previous = u;
+		int half = k;
+		while(true) {
+		    int v = h.target(half);
+		    walked[half] = true;
+		    walked[h.edgeIndex(v, previous)] = true;
+		    path[length++] = half;
+		    if(h.degree(v) != 2) {
+			to[chains] = v;
+			break;
+		    }
+		    half = h.target(h.edgeStart(v)) == previous
+			? h.edgeStart(v) + 1 : h.edgeStart(v);
+		    previous = v;
+		}
+		++chains;
+	    }
+	}
+	start[chains] = length;
+
+	boolean[] kept = new boolean[chains];
+	Arrays.fill(kept, true);
+	for(int c = 0; c < chains; ++c) {
+	    kept[c] = false;
+	    kept[c] = LRPlanarity.IsPlanar(Contracted(from, to, kept, chains));
+	}
+
+	int[] found = new int[2 * length];
+	int count = 0;
+	for(int c = 0; c < chains; ++c) {
+	    if(!kept[c]) {
+		continue;
+	    }
+	    int previous = from[c];
+	    for(int i = start[c]; i < start[c+1]; ++i) {
+		found[count++] = h.label(previous);
+		found[count++] = h.label(h.target(path[i]));
+		previous = h.target(path[i]);
+	    }
+	}
+	return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Builds the graph of the chains still kept, each an edge between its
+     * ends.  Chains with the same ends give one edge and a chain that
+     * comes back to where it started gives none, which changes nothing
+     * about planarity.
+     */
+    private static CSRGraph Contracted(int[] from, int[] to, boolean[] kept,
+				       int chains) {
+	EdgeList edges = new EdgeList(chains);
+	for(int c = 0; c < chains; ++c) {
+	    if(kept[c] && from[c] != to[c]) {
+		edges.addEdge(from[c], to[c]);
+	    }
+	}
+	return edges.toCSRGraph();
+    }
+}
@@ -0,0 +1,660 @@
+/*
+ * LRPlanarity.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.util.Arrays;
+
+/**
+ * This class is a linear-time planarity test, the left-right test of
+ * de Fraysseix and Rosenstiehl as described by Brandes ("The Left-Right
+ * Planarity Test").  The first DFS orients every edge and computes the
+ * lowpoints and nesting depth of each oriented edge.  The second DFS,
+ * visiting the outgoing edges of each vertex in order of nesting depth,
+ * tries to put the return edges on a left and a right side and keeps the
+ * constraints between them on a stack of conflict pairs; the graph is
+ * nonplanar exactly when two edges that must be on different sides are
+ * forced onto the same one.
+ *
+ * Unlike TestPlanarity.PlanarityTesting this runs in O(n+m) time and
+ * does not need a biconnected graph.  Every oriented edge is named by its
+ * index in the CSR targets array, so all the per-edge data is kept in
+ * int arrays and both searches use explicit stacks.
+ *
+ * Embedding also runs the embedding phase of Brandes' paper on a planar
+ * graph: the side of every edge is resolved along the ref links the
+ * testing phase left, the outgoing edges are sorted again by their signed
+ * nesting depth, and a third DFS places the incoming edges of every
+ * vertex around it.  The result is a rotation system, in the layout
+ * PlanarEmbedding describes.
+ *
+ * @author Matthew McCarty
+ */
+
+public class LRPlanarity {
+    private final CSRGraph graph;
+
+    // Per vertex.
+    private final int[] height;
+    private final int[] parentEdge;
+    private final int[] next;
+    private final int[] dfsStack;
+
+    // Per directed edge, i.e. per index into the targets array.
+    private final int[] twin;
+    private final boolean[] outward;
+    private final boolean[] skipInit;
+    private final int[] lowpt;
+    private final int[] lowpt2;
+    private final int[] nestingDepth;
+    private final int[] ref;
+    private final int[] lowptEdge;
+    private final int[] stackBottom;
+    private final int[] side;
+
+    // The outgoing edges of every vertex, sorted by nesting depth.
+    private final int[] orderedOffsets;
+    private final int[] orderedEdges;
+
+    // The conflict pair stack.  Each pair is two intervals of return
+    // edges, left and right, and each interval is its low and high edge,
+    // with -1 for an empty interval.
+    private final int[] leftLow;
+    private final int[] leftHigh;
+    private final int[] rightLow;
+    private final int[] rightHigh;
+    private int stackSize;
+
+    // The rotation found by the embedding phase.
+    private int[] rotation;
+
+    private LRPlanarity(CSRGraph graph, boolean embed) {
+	int n = graph.numberOfVertices();
+	int halfEdges = 2 * graph.numberOfEdges();
+	this.graph = graph;
+
+	height = new int[n];
+	parentEdge = new int[n];
+	next = new int[n];
+	dfsStack = new int[n + 1];
+	Arrays.fill(height, -1);
+	Arrays.fill(parentEdge, -1);
+
+	twin = new int[halfEdges];
+	outward = new boolean[halfEdges];
+	skipInit = new boolean[halfEdges];
+	lowpt = new int[halfEdges];
+	lowpt2 = new int[halfEdges];
+	nestingDepth = new int[halfEdges];
+	ref = new int[halfEdges];
+	lowptEdge = new int[halfEdges];
+	stackBottom = new int[halfEdges];
+	Arrays.fill(ref, -1);
+	if(embed) {
+	    side = new int[halfEdges];
+	    Arrays.fill(side, 1);
+	} else {
+	    side = null;
+	}
+
+	orderedOffsets = new int[n + 1];
+	orderedEdges = new int[halfEdges / 2];
+
+	leftLow = new int[halfEdges / 2 + 1];
+	leftHigh = new int[halfEdges / 2 + 1];
+	rightLow = new int[halfEdges / 2 + 1];
+	rightHigh = new int[halfEdges / 2 + 1];
+	stackSize = 0;
+    }
+
+    /**
+     * Tests a graph for planarity.  The graph does not have to be
+     * connected or biconnected.
+     *
+     * @param graph	The given graph
+     * @return		True if planar, false otherwise
+     */
+    public static boolean IsPlanar(CSRGraph graph) {
+	int n = graph.numberOfVertices();
+	if(n > 2 && graph.numberOfEdges() > 3 * n - 6) {
+	    return false;
+	}
+	if(!PlanarityMetrics.ENABLED) {
+	    return new LRPlanarity(graph, false).run();
+	}
+	PlanarityMetrics.Span span =
+	    PlanarityMetrics.Begin(PlanarityMetrics.Phase.LEFT_RIGHT, -1);
+	boolean planar = new LRPlanarity(graph, false).run();
+	span.end(graph.numberOfEdges());
+	return planar;
+    }
+
+    /**
+     * Finds a planar embedding of a graph.  The graph does not have to be
+     * connected or biconnected.
+     *
+     * @param graph	The given graph
+     * @return		The rotation of every vertex, laid out as the
+     * 			graph's targets array, or null if the graph is
+     * 			nonplanar
+     */
+    public static int[] Embedding(CSRGraph graph) {
+	int n = graph.numberOfVertices();
+	if(n > 2 && graph.numberOfEdges() > 3 * n - 6) {
+	    return null;
+	}
+	LRPlanarity lr = new LRPlanarity(graph, true);
+	return lr.run() ? lr.rotation : null;
+    }
+
+    /**
+     * Runs both phases over every component.
+     */
+    private boolean run() {
+	int n = graph.numberOfVertices();
+	findTwins();
+
+	// Orientation.
+	int[] roots = new int[n];
+	int rootCount = 0;
+	for(int v = 0; v < n; ++v) {
+	    if(height[v] < 0) {
+		height[v] = 0;
+		roots[rootCount++] = v;
+		orient(v);
+	    }
+	}
+
+	// Testing.
+	sortByNestingDepth();
+	Arrays.fill(skipInit, false);
+	for(int v = 0; v < n; ++v) {
+	    next[v] = orderedOffsets[v];
+	}
+	for(int i = 0; i < rootCount; ++i) {
+	    if(!test(roots[i])) {
+		return false;
+	    }
+	}
+
+	// Embedding.
+	if(side != null) {
+	    embed(roots, rootCount);
+	}
+	return true;
+    }
+
+    /**
+     * Pairs up the two directions of every edge.  Rows are sorted, so the
+     * entries pointing back to smaller vertices appear in the order those
+     * vertices are visited.
+     */
+    private void findTwins() {
+	int n = graph.numberOfVertices();
+	for(int v = 0; v < n; ++v) {
+	    next[v] = graph.edgeStart(v);
+	}
+	for(int v = 0; v < n; ++v) {
+	    for(int k = graph.edgeStart(v); k < graph.edgeEnd(v); ++k) {
+		int w = graph.target(k);
+		if(v < w) {
+		    twin[k] = next[w];
+		    twin[next[w]++] = k;
+		}
+	    }
+	}
+    }
+
+    /**
+     * Returns the vertex an oriented edge starts from.
+     */
+    private int tail(int edge) {
+	return graph.target(twin[edge]);
+    }
+
+    /**
+     * The orientation phase: a DFS from the root that orients each edge in
+     * the direction it is first traversed and computes its lowpoints and
+     * nesting depth.
+     */
+    private void orient(int root) {
+	int top = 0;
+	dfsStack[top++] = root;
+	next[root] = graph.edgeStart(root);
+
+	while(top > 0) {
+	    int v = dfsStack[--top];
+	    int e = parentEdge[v];
+
+	    for(; next[v] < graph.edgeEnd(v); ++next[v]) {
+		int vw = next[v];
+		int w = graph.target(vw);
+
+		if(!skipInit[vw]) {
+		    // Skip edges that were already oriented from w.
+		    if(outward[vw] || outward[twin[vw]]) {
+			continue;
+		    }
+		    outward[vw] = true;
+		    lowpt[vw] = height[v];
+		    lowpt2[vw] = height[v];
+
+		    // A tree edge: visit w, and come back to v after.
+		    if(height[w] < 0) {
+			parentEdge[w] = vw;
+			height[w] = height[v] + 1;
+			next[w] = graph.edgeStart(w);
+			dfsStack[top++] = v;
+			dfsStack[top++] = w;
+			skipInit[vw] = true;
+			break;
+		    }
+		    // A back edge.
+		    lowpt[vw] = height[w];
+		}
+
+		// Determine the nesting depth.
+		nestingDepth[vw] = 2 * lowpt[vw];
+		if(lowpt2[vw] < height[v]) {
+		    ++nestingDepth[vw];
+		}
+
+		// Update the lowpoints of the parent edge.
+		if(e >= 0) {
+		    if(lowpt[vw] < lowpt[e]) {
+			lowpt2[e] = Math.min(lowpt[e], lowpt2[vw]);
+			lowpt[e] = lowpt[vw];
+		    } else if(lowpt[vw] > lowpt[e]) {
+			lowpt2[e] = Math.min(lowpt2[e], lowpt[vw]);
+		    } else {
+			lowpt2[e] = Math.min(lowpt2[e], lowpt2[vw]);
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * Sorts the outgoing edges of every vertex by nesting depth, with one
+     * counting sort over all the edges, since depths are below 2n+2 and,
+     * once the embedding phase has signed them, above -2n-2.
+     */
+    private void sortByNestingDepth() {
+	int n = graph.numberOfVertices();
+	int bias = 2 * n + 1;
+	int[] count = new int[2 * bias + 2];
+	int halfEdges = outward.length;
+
+	Arrays.fill(orderedOffsets, 0);
+	for(int k = 0; k < halfEdges; ++k) {
+	    if(outward[k]) {
+		++count[nestingDepth[k] + bias + 1];
+		++orderedOffsets[tail(k) + 1];
+	    }
+	}
+	for(int d = 0; d + 1 < count.length; ++d) {
+	    count[d+1] += count[d];
+	}
+	for(int v = 0; v < n; ++v) {
+	    orderedOffsets[v+1] += orderedOffsets[v];
+	}
+
+	int[] sorted = new int[orderedEdges.length];
+	for(int k = 0; k < halfEdges; ++k) {
+	    if(outward[k]) {
+		sorted[count[nestingDepth[k] + bias]++] = k;
+	    }
+	}
+	int[] fill = Arrays.copyOf(orderedOffsets, n);
+	for(int i = 0; i < sorted.length; ++i) {
+	    orderedEdges[fill[tail(sorted[i])]++] = sorted[i];
+	}
+    }
+
+    /**
+     * The testing phase: a DFS over the oriented graph that adds the
+     * constraints between return edges to the conflict pair stack.
+     *
+     * @return	False as soon as the constraints cannot be met
+     */
+    private boolean test(int root) {
+	int top = 0;
+	dfsStack[top++] = root;
+
+	while(top > 0) {
+	    int v = dfsStack[--top];
+	    int e = parentEdge[v];
+	    boolean skipFinal = false;
+
+	    for(; next[v] < orderedOffsets[v+1]; ++next[v]) {
+		int ei = orderedEdges[next[v]];
+		int w = graph.target(ei);
+
+		if(!skipInit[ei]) {
+		    stackBottom[ei] = stackSize;
+
+		    // A tree edge: visit w, and come back to v after.
+		    if(ei == parentEdge[w]) {
+			dfsStack[top++] = v;
+			dfsStack[top++] = w;
+			skipInit[ei] = true;
+			skipFinal = true;
+			break;
+		    }
+		    // A back edge is its own return edge.
+		    lowptEdge[ei] = ei;
+		    push(-1, -1, ei, ei);
+		}
+
+		// Integrate the new return edges.
+		if(lowpt[ei] < height[v]) {
+		    if(next[v] == orderedOffsets[v]) {
+			lowptEdge[e] = lowptEdge[ei];
+		    } else if(!addConstraints(ei, e)) {
+			return false;
+		    }
+		}
+	    }
+
+	    // Remove the back edges returning to the parent.
+	    if(!skipFinal && e >= 0) {
+		removeBackEdges(e);
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Merges the return edges of ei into a new conflict pair, together
+     * with the return edges of its earlier siblings that conflict with it.
+     */
+    private boolean addConstraints(int ei, int e) {
+	int pLeftLow = -1;
+	int pLeftHigh = -1;
+	int pRightLow = -1;
+	int pRightHigh = -1;
+
+	// Merge the return edges of ei into the right side of P.
+	do {
+	    int top = --stackSize;
+	    if(leftLow[top] != -1 || leftHigh[top] != -1) {
+		swap(top);
+	    }
+	    if(leftLow[top] != -1 || leftHigh[top] != -1) {
+		return false;
+	    }
+	    if(lowpt[rightLow[top]] > lowpt[e]) {
+		if(pRightLow == -1 && pRightHigh == -1) {
+		    pRightHigh = rightHigh[top];
+		} else {
+		    ref[pRightLow] = rightHigh[top];
+		}
+		pRightLow = rightLow[top];
+	    } else {
+		ref[rightLow[top]] = lowptEdge[e];
+	    }
+	} while(stackSize != stackBottom[ei]);
+
+	// Merge the conflicting return edges of the earlier siblings into
+	// the left side of P.
+	while(stackSize > 0 &&
+	      (conflicting(leftLow[stackSize-1], leftHigh[stackSize-1], ei) ||
+	       conflicting(rightLow[stackSize-1], rightHigh[stackSize-1], ei))) {
+	    int top = --stackSize;
+	    if(conflicting(rightLow[top], rightHigh[top], ei)) {
+		swap(top);
+	    }
+	    if(conflicting(rightLow[top], rightHigh[top], ei)) {
+		return false;
+	    }
+
+	    // Merge the interval below lowpt(ei) into the right side.
+	    if(pRightLow != -1) {
+		ref[pRightLow] = rightHigh[top];
+	    }
+	    if(rightLow[top] != -1) {
+		pRightLow = rightLow[top];
+	    }
+
+	    if(pLeftLow == -1 && pLeftHigh == -1) {
+		pLeftHigh = leftHigh[top];
+	    } else if(pLeftLow != -1) {
+		ref[pLeftLow] = leftHigh[top];
+	    }
+	    pLeftLow = leftLow[top];
+	}
+
+	if(pLeftLow != -1 || pLeftHigh != -1 ||
+	   pRightLow != -1 || pRightHigh != -1) {
+	    push(pLeftLow, pLeftHigh, pRightLow, pRightHigh);
+	}
+	return true;
+    }
+
+    /**
+     * Trims the return edges ending at the tail of e from the stack.
+     */
+    private void removeBackEdges(int e) {
+	int u = tail(e);
+
+	// Drop entire conflict pairs.
+	while(stackSize > 0 && lowest(stackSize - 1) == height[u]) {
+	    --stackSize;
+	    if(side != null && leftLow[stackSize] != -1) {
+		side[leftLow[stackSize]] = -1;
+	    }
+	}
+
+	// One more conflict pair to consider.
+	if(stackSize > 0) {
+	    int top = stackSize - 1;
+
+	    // Trim the left interval.
+	    while(leftHigh[top] != -1 && graph.target(leftHigh[top]) == u) {
+		leftHigh[top] = ref[leftHigh[top]];
+	    }
+	    if(leftHigh[top] == -1 && leftLow[top] != -1) {
+		ref[leftLow[top]] = rightLow[top];
+		if(side != null) {
+		    side[leftLow[top]] = -1;
+		}
+		leftLow[top] = -1;
+	    }
+
+	    // Trim the right interval.
+	    while(rightHigh[top] != -1 && graph.target(rightHigh[top]) == u) {
+		rightHigh[top] = ref[rightHigh[top]];
+	    }
+	    if(rightHigh[top] == -1 && rightLow[top] != -1) {
+		ref[rightLow[top]] = leftLow[top];
+		if(side != null) {
+		    side[rightLow[top]] = -1;
+		}
+		rightLow[top] = -1;
+	    }
+	}
+
+	// The side of e is the side of a highest return edge.
+	if(lowpt[e] < height[u] && stackSize > 0) {
+	    int hl = leftHigh[stackSize - 1];
+	    int hr = rightHigh[stackSize - 1];
+	    if(hl != -1 && (hr == -1 || lowpt[hl] > lowpt[hr])) {
+		ref[e] = hl;
+	    } else {
+		ref[e] = hr;
+	    }
+	}
+    }
+
+    /**
+     * The embedding phase: a DFS over the oriented graph, visiting the
+     * outgoing edges of each vertex in order of signed nesting depth,
+     * that puts the tree edge into each vertex first around it and every
+     * back edge next to the tree edge it returns past, on its side.
+     */
+    private void embed(int[] roots, int rootCount) {
+	int n = graph.numberOfVertices();
+	int halfEdges = outward.length;
+	int[] chain = new int[halfEdges];
+	for(int k = 0; k < halfEdges; ++k) {
+	    if(outward[k]) {
+		nestingDepth[k] *= sign(k, chain);
+	    }
+	}
+	sortByNestingDepth();
+
+	// Start every rotation with the outgoing edges, in order.  The
+	// edges around a vertex are a circular list, linked clockwise by
+	// cw and counterclockwise by ccw.
+	int[] cw = new int[halfEdges];
+	int[] ccw = new int[halfEdges];
+	int[] first = new int[n];
+	Arrays.fill(first, -1);
+	for(int v = 0; v < n; ++v) {
+	    for(int i = orderedOffsets[v]; i < orderedOffsets[v+1]; ++i) {
+		Link(orderedEdges[i], i == orderedOffsets[v] ? -1
+		     : orderedEdges[i-1], cw, ccw);
+	    }
+	    if(orderedOffsets[v] < orderedOffsets[v+1]) {
+		first[v] = orderedEdges[orderedOffsets[v]];
+	    }
+	}
+
+	// Add the incoming edges.  The left and right references of a
+	// vertex are the edges around it that the back edges returning to
+	// it on either side are placed next to.
+	int[] leftRef = new int[n];
+	int[] rightRef = new int[n];
+	for(int v = 0; v < n; ++v) {
+	    next[v] = orderedOffsets[v];
+	}
+	for(int i = 0; i < rootCount; ++i) {
+	    int top = 0;
+	    dfsStack[top++] = roots[i];
+	    while(top > 0) {
+		int v = dfsStack[--top];
+		while(next[v] < orderedOffsets[v+1]) {
+		    int ei = orderedEdges[next[v]++];
+		    int w = graph.target(ei);
+		    int wv = twin[ei];
+
+		    // A tree edge goes first around w; visit w, and come
+		    // back to v after.
+		    if(ei == parentEdge[w]) {
+			Link(wv, first[w] == -1 ? -1 : ccw[first[w]], cw, ccw);
+			first[w] = wv;
+			leftRef[v] = ei;
+			rightRef[v] = ei;
+			dfsStack[top++] = v;
+			dfsStack[top++] = w;
+			break;
+		    }
+		    // A back edge on the right goes just after the right
+		    // reference, on the left just before the left one.
+		    if(side[ei] == 1) {
+			Link(wv, rightRef[w], cw, ccw);
+		    } else {
+			Link(wv, ccw[leftRef[w]], cw, ccw);
+			leftRef[w] = wv;
+		    }
+		}
+	    }
+	}
+
+	rotation = new int[halfEdges];
+	for(int v = 0; v < n; ++v) {
+	    int k = first[v];
+	    for(int i = graph.edgeStart(v); i < graph.edgeEnd(v); ++i) {
+		rotation[i] = graph.target(k);
+		k = cw[k];
+	    }
+	}
+    }
+
+    /**
+     * Returns the side of an edge, 1 or -1, resolving the sides of the
+     * edges on its chain of refs on the way.
+     *
+     * @param chain	Room for the chain
+     */
+    private int sign(int edge, int[] chain) {
+	int length = 0;
+	while(ref[edge] != -1) {
+	    chain[length++] = edge;
+	    edge = ref[edge];
+	}
+	int sign = side[edge];
+	while(length > 0) {
+	    int e = chain[--length];
+	    side[e] *= sign;
+	    sign = side[e];
+	    ref[e] = -1;
+	}
+	return sign;
+    }
+
+    /**
+     * Puts an edge into a circular list just clockwise of another, or
+     * into a list of its own if the other is -1.
+     */
+    private static void Link(int edge, int after, int[] cw, int[] ccw) {
+	if(after == -1) {
+	    cw[edge] = edge;
+	    ccw[edge] = edge;
+	} else {
+	    cw[edge] = cw[after];
+	    ccw[edge] = after;
+	    ccw[cw[after]] = edge;
+	    cw[after] = edge;
+	}
+    }
+
+    /**
+     * Determines whether an interval has a return edge higher than the
+     * lowpoint of the given edge.
+     */
+    private boolean conflicting(int low, int high, int edge) {
+	return (low != -1 || high != -1) && lowpt[high] > lowpt[edge];
+    }
+
+    /**
+     * Returns the lowest lowpoint of a conflict pair.
+     */
+    private int lowest(int pair) {
+	if(leftLow[pair] == -1 && leftHigh[pair] == -1) {
+	    return lowpt[rightLow[pair]];
+	}
+	if(rightLow[pair] == -1 && rightHigh[pair] == -1) {
+	    return lowpt[leftLow[pair]];
+	}
+	return Math.min(lowpt[leftLow[pair]], lowpt[rightLow[pair]]);
+    }
+
+    /**
+     * Pushes a conflict pair onto the stack.
+     */
+    private void push(int lLow, int lHigh, int rLow, int rHigh) {
+	leftLow[stackSize] = lLow;
+	leftHigh[stackSize] = lHigh;
+	rightLow[stackSize] = rLow;
+	rightHigh[stackSize] = rHigh;
+	++stackSize;
+    }
+
+    /**
+     * Swaps the two intervals of a conflict pair.
+     */
+    private void swap(int pair) {
+	int low = leftLow[pair];
+	int high = leftHigh[pair];
+	leftLow[pair] = rightLow[pair];
+	leftHigh[pair] = rightHigh[pair];
+	rightLow[pair] = low;
+	rightHigh[pair] = high;
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * ParallelPlanarity.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class runs the pieces engine (TestPlanarity.PlanarityTesting) on a
+ * fork/join pool.  The recursive calls for the non-path pieces of a cycle
+ * share nothing but the cycle, which they only read, so each one becomes
+ * its own task, and the interlacement graph and its bipartite check run
+ * as one more task next to them.  As soon as any task finds the graph
+ * nonplanar it raises a flag shared by the whole run; the tasks that have
+ * not started are cancelled and the running ones stop at their next
+ * check.
+ *
+ * Every task works on a CSRGraph of its own.  It decomposes its graph
+ * into pieces on SubgraphViews, and enters the subproblem of every
+ * non-path piece in turn with Subproblem.ForPiece, as PlanarityDriver
+ * does.  A subproblem with at least the threshold of edges is copied
+ * out of the view into a graph of its own and forked, since the views
+ * of one graph share their owner array and cannot be worked on by two
+ * threads at once; a smaller one is tested there and then by the
+ * sequential PlanarityDriver, on the view, since forking it costs more
+ * than it saves.  So is every subproblem below MAX_FORK_DEPTH levels of
+ * forked tasks, so the thread stacks, and the copies kept alive by the
+ * tasks waiting on their children, grow with that bound rather than
+ * with the nesting depth of the graph; the driver keeps the rest of the
+ * recursion on the heap.  The driver checks the shared flag before
+ * every piece, so it stops early too.
+ *
+ * @author Matthew McCarty
+ */
+
+public class ParallelPlanarity {
+
+    /**
+     * The default number of edges below which a subproblem is solved
+     * sequentially.
+     */
+    public static final int DEFAULT_THRESHOLD = 2000;
+
+    /**
+     * The most levels of forked tasks; deeper subproblems are tested by
+     * PlanarityDriver on the task's own thread.
+     */
+    static final int MAX_FORK_DEPTH = 16;
+
+    /**
+     * Tests a graph for planarity on the common pool.
+     *
+     * @param graph	The given graph
+     * @param threshold	The number of edges below which a subproblem is
+     * 			solved sequentially
+     * @return		True if planar, false otherwise
+     */
+    public static boolean IsPlanar(CSRGraph graph, int threshold) {
+	return IsPlanar(graph, threshold, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Tests a graph for planarity on the given pool.  The graph is split
+     * into its biconnected components, the blocks are tested in parallel
+     * and so are the pieces inside each block.
+     *
+     * @param graph	The given graph
+     * @param threshold	The number of edges below which a subproblem is
+     * 			solved sequentially
+     * @param pool	The pool to run the tasks on
+     * @return		True if planar, false otherwise
+     */
+    public static boolean IsPlanar(CSRGraph graph, int threshold,
+				   ForkJoinPool pool) {
+	return IsPlanar(graph, threshold, pool, false);
+    }
+
+    /**
+     * Tests a graph for planarity on the given pool, optionally reducing
+     * every block and every forked piece with Kernel before testing it.
+     *
+     * @param graph		The given graph
+     * @param threshold		The number of edges below which a
+     * 				subproblem is solved sequentially
+     * @param pool		The pool to run the tasks on
+     * @param reducePieces	Whether to reduce the blocks and pieces
+     * @return			True if planar, false otherwise
+     */
+    public static boolean IsPlanar(CSRGraph graph, int threshold,
+				   ForkJoinPool pool, boolean reducePieces) {
+	if(graph.numberOfVertices() > 2 &&
+	   (3 * graph.numberOfVertices() - 6) < graph.numberOfEdges()) {
+	    return false;
+	}
+	return TestBlocks(GraphUtilities.BiconnectedComponents(graph, 9),
+			  true, reducePieces, threshold, pool);
+    }
+
+    /**
+     * Tests a list of biconnected graphs on the given pool, one task per
+     * block, and stops at the first nonplanar one.
+     *
+     * @param blocks		The blocks
+     * @param parallelPieces	Whether the pieces inside each block are
+     * 				also tested in parallel
+     * @param threshold		The number of edges below which a
+     * 				subproblem is solved sequentially
+     * @param pool		The pool to run the tasks on
+     * @return			True if all the blocks are planar
+     */
+    public static boolean TestBlocks(List<CSRGraph> blocks,
+				     boolean parallelPieces, int threshold,
+				     ForkJoinPool pool) {
+	return TestBlocks(blocks, parallelPieces, false, threshold, pool);
+    }
+
+    /**
+     * Tests a list of biconnected graphs on the given pool, as above,
+     * optionally reducing every block and every forked piece first.
+     *
+     * @param blocks		The blocks
+     * @param parallelPieces	Whether the pieces inside each block are
+     * 				also tested in parallel
+     * @param reducePieces	Whether to reduce the blocks and pieces
+     * @param threshold		The number of edges below which a
+     * 				subproblem is solved sequentially
+     * @param pool		The pool to run the tasks on
+     * @return			True if all the blocks are planar
+     */
+    public static boolean TestBlocks(List<CSRGraph> blocks,
+				     boolean parallelPieces,
+				     boolean reducePieces, int threshold,
+				     ForkJoinPool pool) {
+	AtomicBoolean nonplanar = new AtomicBoolean(false);
+	boolean planar = pool.invoke(new BlockTask(blocks, 0, blocks.size(),
+						   parallelPieces,
+						   reducePieces, threshold,
+						   nonplanar));
+	return planar && !nonplanar.get();
+    }
+
+    /**
+     * The parallel version of PlanarityTesting.
+     *
+     * @param graph	The given graph
+     * @param cycle	The vertices of the given cycle, in order
+     * @param threshold	The number of edges below which a subproblem is
+     * 			solved sequentially
+     * @param pool	The pool to run the tasks on
+     * @return		True if planar, false otherwise
+     */
+    public static boolean PlanarityTesting(CSRGraph graph, int[] cycle,
+					   int threshold, ForkJoinPool pool) {
+	AtomicBoolean nonplanar = new AtomicBoolean(false);
+	pool.invoke(new PieceTask(graph, cycle, false, threshold, 0, 0,
+				  nonplanar));
+	return !nonplanar.get();
+    }
+
+    /**
+     * The test of one subproblem on a graph of its own, reduced first if
+     * asked to.
+     */
+    @SuppressWarnings("serial")
+    private static final class PieceTask extends RecursiveTask<Boolean> {
+	private final CSRGraph graph;
+	private final int[] cycle;
+	private final boolean reduce;
+	private final int threshold;
+	private final int depth;
+	private final int forks;
+	private final AtomicBoolean nonplanar;
+
+	PieceTask(CSRGraph graph, int[] cycle, boolean reduce, int threshold,
+		  int depth, int forks, AtomicBoolean nonplanar) {
+	    this.graph = graph;
+	    this.cycle = cycle;
+	    this.reduce = reduce;
+	    this.threshold = threshold;
+	    this.depth = depth;
+	    this.forks = forks;
+	    this.nonplanar = nonplanar;
+	}
+
+	protected Boolean compute() {
+	    if(nonplanar.get()) {
+		return false;
+	    }
+
+	    CSRGraph graph = this.graph;
+	    int[] cycle = this.cycle;
+	    if(reduce && depth > 0) {
+		Kernel kernel = Kernel.Reduce(graph, cycle);
+		graph = kernel.graph();
+		cycle = kernel.cycle();
+	    }
+	    SubgraphView view = SubgraphView.Whole(graph);
+	    if(graph.numberOfEdges() < threshold || forks >= MAX_FORK_DEPTH) {
+		return sequential(view, cycle, depth);
+	    }
+	    if((3 * graph.numberOfVertices() - 6) < graph.numberOfEdges()) {
+		return report(false);
+	    }
+
+	    PlanarityMetrics.Span span = PlanarityMetrics.ENABLED ?
+		PlanarityMetrics.Begin(PlanarityMetrics.Phase.PIECES, depth)
+		: null;
+	    PieceDecomposition pieces = PieceDecomposition.Of(view, cycle);
+	    if(span != null) {
+		span.end(graph.numberOfEdges());
+		PlanarityMetrics.Level(depth, cycle.length,
+				       pieces.numberOfPieces(),
+				       graph.numberOfEdges());
+	    }
+
+	    // Check the interlacement graph while the pieces recurse.
+	    InterlacementTask interlacement =
+		new InterlacementTask(pieces.attachments(), cycle.length,
+				      depth, nonplanar);
+	    interlacement.fork();
+
+	    // Enter the pieces in turn: fork a copy of every large one, and
+	    // test the small ones on their views here.
+	    List<PieceTask> tasks = new ArrayList<PieceTask>();
+	    boolean planar = true;
+	    for(int piece = 0; planar && piece < pieces.numberOfPieces();
+		++piece) {
+		if(pieces.isPath(piece)) {
+		    continue;
+		}
+		span = PlanarityMetrics.ENABLED ?
+		    PlanarityMetrics.Begin(PlanarityMetrics.Phase.SUBPROBLEM,
+					   depth + 1) : null;
+		Subproblem next = Subproblem.ForPiece(pieces, piece);
+		if(span != null) {
+		    span.end(next.view.numberOfEdges());
+		    PlanarityMetrics.PIECE_EDGES.record(
+			next.view.numberOfEdges());
+		}
+		if(next.view.numberOfEdges() < threshold) {
+		    planar = sequential(next.view, next.cycle, depth + 1);
+		    continue;
+		}
+		CSRGraph copy = next.view.toCSRGraph();
+		int[] copyCycle = new int[next.cycle.length];
+		for(int i = 0; i < copyCycle.length; ++i) {
+		    copyCycle[i] = copy.indexOf(next.cycle[i]);
+		}
+		PieceTask task = new PieceTask(copy, copyCycle, reduce,
+					       threshold, depth + 1,
+					       forks + 1, nonplanar);
+		task.fork();
+		tasks.add(task);
+	    }
+
+	    // Once one task has failed, the others are not worth waiting
+	    // for: cancel what has not started and let the rest notice
+	    // the flag on their own.
+	    for(PieceTask task : tasks) {
+		if(!planar || nonplanar.get()) {
+		    task.cancel(false);
+		} else if(!task.join()) {
+		    planar = false;
+		}
+	    }
+	    if(!planar || nonplanar.get()) {
+		interlacement.cancel(false);
+		return report(false);
+	    }
+	    return interlacement.join();
+	}
+
+	/**
+	 * Tests a subproblem with the sequential driver, on this thread.
+	 */
+	private boolean sequential(SubgraphView view, int[] cycle,
+				   int depth) {
+	    try {
+		return report(PlanarityDriver.Test(view, cycle, nonplanar,
+						   depth));
+	    } catch(CancellationException ex) {
+		return false;
+	    }
+	}
+
+	/**
+	 * Raises the shared flag if the subproblem was nonplanar.
+	 */
+	private boolean report(boolean planar) {
+	    if(!planar) {
+		nonplanar.set(true);
+	    }
+	    return planar;
+	}
+    }
+
+    /**
+     * Checks that the interlacement graph of the pieces is bipartite.
+     */
+    @SuppressWarnings("serial")
+    private static final class InterlacementTask
+	extends RecursiveTask<Boolean> {
+	private final int[][] attach;
+	private final int cycleLength;
+	private final int depth;
+	private final AtomicBoolean nonplanar;
+
+	InterlacementTask(int[][] attach, int cycleLength, int depth,
+			  AtomicBoolean nonplanar) {
+	    this.attach = attach;
+	    this.cycleLength = cycleLength;
+	    this.depth = depth;
+	    this.nonplanar = nonplanar;
+	}
+
+	protected Boolean compute() {
+	    if(nonplanar.get()) {
+		return false;
+	    }
+	    PlanarityMetrics.Span span = PlanarityMetrics.ENABLED ?
+		PlanarityMetrics.Begin(PlanarityMetrics.Phase.INTERLACEMENT,
+				       depth) : null;
+	    boolean bipartite = Interlacement.IsBipartite(attach, cycleLength);
+	    if(span != null) {
+		span.end(attach.length);
+	    }
+	    if(!bipartite) {
+		nonplanar.set(true);
+		return false;
+	    }
+	    return true;
+	}
+    }
+
+    /**
+     * The test of a range of blocks.  Ranges are split in half until a
+     * single block is left.
+     */
+    @SuppressWarnings("serial")
+    private static final class BlockTask extends RecursiveTask<Boolean> {
+	private final List<CSRGraph> blocks;
+	private final int from;
+	private final int to;
+	private final boolean parallelPieces;
+	private final boolean reduce;
+	private final int threshold;
+	private final AtomicBoolean nonplanar;
+
+	BlockTask(List<CSRGraph> blocks, int from, int to,
+		  boolean parallelPieces, boolean reduce, int threshold,
+		  AtomicBoolean nonplanar) {
+	    this.blocks = blocks;
+	    this.from = from;
+	    this.to = to;
+	    this.parallelPieces = parallelPieces;
+	    this.reduce = reduce;
+	    this.threshold = threshold;
+	    this.nonplanar = nonplanar;
+	}
+
+	protected Boolean compute() {
+	    if(nonplanar.get()) {
+		return false;
+	    }
+	    if(to - from == 0) {
+		return true;
+	    }
+
+	    if(to - from > 1) {
+		int middle = (from + to) >>> 1;
+		BlockTask left = new BlockTask(blocks, from, middle,
+					       parallelPieces, reduce,
+					       threshold, nonplanar);
+		left.fork();
+		boolean planar = new BlockTask(blocks, middle, to,
+					       parallelPieces, reduce,
+					       threshold, nonplanar).compute();
+		if(!planar || nonplanar.get()) {
+		    left.cancel(false);
+		    return false;
+		}
+		return left.join();
+	    }
+
+	    CSRGraph block = blocks.get(from);
+	    if(reduce) {
+		block = Kernel.Reduce(block).graph();
+
+		// Any graph with fewer than 9 edges is planar.
+		if(block.numberOfEdges() < 9) {
+		    return true;
+		}
+	    }
+	    boolean planar;
+	    if(!parallelPieces || BitsetGraph.Suits(block)) {
+		planar = TestPlanarity.IsBlockPlanar(block);
+	    } else {
+		int[] cycle = TestPlanarity.FindSeparatingCycle(block);
+		planar = cycle == null ||
+		    new PieceTask(block, cycle, reduce, threshold, 0, 0,
+				  nonplanar).invoke();
+	    }
+	    if(!planar) {
+		nonplanar.set(true);
+	    }
+	    return planar;
+	}
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * ParityUnionFind.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+/**
+ * A union-find over the vertices 0 to n-1 that also remembers, for every
+ * vertex, whether it has the same color as the root of its set in a two
+ * coloring.  Adding an edge joins the sets of its ends so that they get
+ * different colors, and fails if they are already in one set with the
+ * same color, which means the edges added so far have an odd cycle.  So
+ * a graph can be checked for being bipartite one edge at a time, while
+ * its edges are still being found, and the check can stop at the first
+ * edge that closes an odd cycle.
+ *
+ * The sets are joined by rank and the paths compressed on every find, so
+ * m edges over n vertices cost O(n + m a(n)).
+ *
+ * @author Matthew McCarty
+ */
+
+public class ParityUnionFind {
+    private final int[] parent;
+    private final byte[] rank;
+    private final byte[] parity;
+
+    /**
+     * Creates n sets of one vertex each.
+     *
+     * @param n	The number of vertices
+     */
+    public ParityUnionFind(int n) {
+	parent = new int[n];
+	rank = new byte[n];
+	parity = new byte[n];
+	for(int v = 0; v < n; ++v) {
+	    parent[v] = v;
+	}
+    }
+
+    /**
+     * Adds an edge between two vertices, which must get different colors.
+     *
+     * @param vertex1	The first vertex
+     * @param vertex2	The second vertex
+     * @return		False if the two vertices already had to have the
+     * 			same color, so the edge closes an odd cycle
+     */
+    public boolean union(int vertex1, int vertex2) {
+	int root1 = find(vertex1);
+	int root2 = find(vertex2);
+	// After find, every vertex's parity is relative to its root.
+	int difference = parity[vertex1] ^ parity[vertex2] ^ 1;
+	if(root1 == root2) {
+	    return difference == 0;
+	}
+
+	if(rank[root1] < rank[root2]) {
+	    int tmp = root1;
+	    root1 = root2;
+	    root2 = tmp;
+	}
+	parent[root2] = root1;
+	parity[root2] = (byte) difference;
+	if(rank[root1] == rank[root2]) {
+	    ++rank[root1];
+	}
+	return true;
+    }
+
+    /**
+     * Finds the root of the set holding a vertex, and points the vertex
+     * and everything on its way there straight at the root.
+     *
+     * @param vertex	The vertex
+     * @return		The root of its set
+     */
+    public int find(int vertex) {
+	int root = vertex;
+	int total = 0;
+	while(parent[root] != root) {
+	    total ^= parity[root];
+	    root = parent[root];
+	}
+
+	// Each vertex on the path differs from the root by what is left of
+	// the total once the parities below it are taken off.
+	int current = vertex;
+	while(current != root) {
+	    int next = parent[current];
+	    int own = parity[current];
+	    parent[current] = root;
+	    parity[current] = (byte) total;
+	    total ^= own;
+	    current = next;
+	}
+	return root;
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * PieceDecomposition.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class splits a graph, or a SubgraphView of one, into its pieces
+ * with respect to a cycle, without copying it.  Every edge that is not
+ * on the cycle is labelled with its piece, by moving it to a view of its
+ * own in the shared owner array: the chords come first, in the order of
+ * the cycle, and then the components of V-C, in the order their vertices
+ * are met.  The positions on the cycle where every piece attaches are
+ * recorded along the way.
+ *
+ * Finding the chords takes one look at the edges of every cycle vertex,
+ * the components take one search of the rest of the view, and the
+ * attachments one more look at the edges of the cycle vertices.  Like
+ * every walk of a view, these look at all the edges the vertices have in
+ * the whole graph and skip those of other views, so the decomposition
+ * costs the number of vertices of the view plus the sum of their degrees
+ * in the whole graph: O(n+m) for a whole graph, but a vertex of high
+ * degree costs its full degree again at every level of the recursion it
+ * takes part in, however few of its edges are left in the view.  Whether
+ * a piece is a path is known from the degrees alone; a piece is only
+ * built as a graph of its own when someone asks for it.
+ *
+ * @author Matthew McCarty
+ */
+
+public final class PieceDecomposition {
+    private final SubgraphView view;
+    private final int[] cycle;
+    private final int[] owner;
+    private final int firstId;
+    private final int chords;
+    private final int count;
+    private final EdgeList chordEnds;
+    private final int[] memberStart;
+    private final int[] members;
+    private final int[] edges;
+    private final int[][] attach;
+    private final boolean[] path;
+
+    /**
+     * Decomposes a graph into its pieces with respect to a cycle.
+     *
+     * @param graph	The given graph
+     * @param cycle	The vertices of the cycle, in order
+     * @return		The decomposition
+     */
+    public static PieceDecomposition Of(CSRGraph graph, int[] cycle) {
+	return new PieceDecomposition(SubgraphView.Whole(graph), cycle);
+    }
+
+    /**
+     * Decomposes a view into its pieces with respect to a cycle.  The
+     * edges of the view move to the views of its pieces, so a view can
+     * only be decomposed once.
+     *
+     * @param view	The given view
+     * @param cycle	The vertices of the cycle, in order, as vertices of
+     * 			the whole graph
+     * @return		The decomposition
+     */
+    public static PieceDecomposition Of(SubgraphView view, int[] cycle) {
+	return new PieceDecomposition(view, cycle);
+    }
+
+    /**
+     * Labels the edges and records the attachments.
+     */
+    private PieceDecomposition(SubgraphView view, int[] cycle) {
+	CSRGraph graph = view.graph();
+	SubgraphView.Workspace workspace = view.workspace();
+	int[] position = workspace.position;
+	int[] component = workspace.component;
+	this.view = view;
+	this.cycle = cycle;
+	this.owner = workspace.owner;
+	this.firstId = workspace.nextId;
+	for(int i = 0; i < cycle.length; ++i) {
+	    position[cycle[i]] = i;
+	}
+
+	// Every edge between two non-consecutive cycle vertices is a chord.
+	chordEnds = new EdgeList(1);
+	for(int i = 0; i < cycle.length; ++i) {
+	    for(int k = graph.edgeStart(cycle[i]);
+		k < graph.edgeEnd(cycle[i]); ++k) {
+		if(!view.contains(k)) {
+		    continue;
+		}
+		int j = position[graph.target(k)];
+		if(j > i && j - i != 1 && j - i != cycle.length - 1) {
+		    owner[k] = firstId + chordEnds.size();
+		    owner[graph.edgeIndex(cycle[j], cycle[i])] =
+			firstId + chordEnds.size();
+		    chordEnds.addEdge(i, j);
+		}
+	    }
+	}
+	chords = chordEnds.size();
+
+	// Every component of V-C, together with its edges to the cycle,
+	// is a non-chord piece.  The members are listed component after
+	// component, since each search finishes before the next begins.
+	int inner = view.numberOfVertices() - cycle.length;
+	members = new int[inner];
+	int[] starts = new int[inner + 1];
+	int[] halfEdges = new int[inner + chords];
+	boolean[] branches = new boolean[inner];
+	int components = 0;
+	int listed = 0;
+	for(int r = 0; r < view.numberOfVertices(); ++r) {
+	    int vertex = view.vertex(r);
+	    if(position[vertex] >= 0 || component[vertex] >= 0) {
+		continue;
+	    }
+	    int id = firstId + chords + components;
+	    starts[components] = listed;
+	    int searched = listed;
+	    members[listed++] = vertex;
+	    component[vertex] = components;
+	    while(searched < listed) {
+		int u = members[searched++];
+		int degree = 0;
+		for(int k = graph.edgeStart(u); k < graph.edgeEnd(u); ++k) {
+		    if(!view.contains(k)) {
+			continue;
+		    }
+		    owner[k] = id;
+		    ++degree;
+		    int neighbor = graph.target(k);
+		    if(position[neighbor] < 0 && component[neighbor] < 0) {
+			component[neighbor] = components;
+			members[listed++] = neighbor;
+		    }
+		}
+		halfEdges[chords + components] += degree;
+		if(degree > 2) {
+		    branches[components] = true;
+		}
+	    }
+	    ++components;
+	}
+	starts[components] = listed;
+	memberStart = starts;
+	count = chords + components;
+	workspace.nextId = firstId + count;
+
+	// A chord is a path.  A component is one if none of its vertices
+	// has more than two edges, and no attachment more than two edges
+	// into it.
+	path = new boolean[count];
+	for(int piece = 0; piece < count; ++piece) {
+	    path[piece] = piece < chords || !branches[piece - chords];
+	}
+
+	// Walk the cycle in order, so the positions of every piece come
+	// out sorted.  The edges from a cycle vertex into a component move
+	// to the component's view here as well.
+	int[] size = new int[count];
+	int[] last = new int[count];
+	int[] edgesIn = new int[count];
+	Arrays.fill(last, -1);
+	for(int lc = 0; lc < cycle.length; ++lc) {
+	    for(int k = graph.edgeStart(cycle[lc]);
+		k < graph.edgeEnd(cycle[lc]); ++k) {
+		if(!view.contains(k)) {
+		    continue;
+		}
+		int c = component[graph.target(k)];
+		if(c < 0) {
+		    continue;
+		}
+		int piece = chords + c;
+		owner[k] = firstId + piece;
+		++halfEdges[piece];
+		if(last[piece] != lc) {
+		    last[piece] = lc;
+		    edgesIn[piece] = 0;
+		    ++size[piece];
+		}
+		if(++edgesIn[piece] > 2) {
+		    path[piece] = false;
+		}
+	    }
+	}
+
+	attach = new int[count][];
+	edges = new int[count];
+	for(int c = 0; c < chords; ++c) {
+	    attach[c] = new int[] { chordEnds.from(c), chordEnds.to(c) };
+	    edges[c] = 1;
+	}
+	for(int piece = chords; piece < count; ++piece) {
+	    attach[piece] = new int[size[piece]];
+	    edges[piece] = halfEdges[piece] / 2;
+	    size[piece] = 0;
+	}
+	Arrays.fill(last, -1);
+	for(int lc = 0; lc < cycle.length; ++lc) {
+	    for(int k = graph.edgeStart(cycle[lc]);
+		k < graph.edgeEnd(cycle[lc]); ++k) {
+		int piece = owner[k] - firstId;
+		if(piece >= chords && piece < count && last[piece] != lc) {
+		    last[piece] = lc;
+		    attach[piece][size[piece]++] = lc;
+		}
+	    }
+	}
+
+	// Leave the shared arrays as they were found.
+	for(int vertex : cycle) {
+	    position[vertex] = -1;
+	}
+	for(int r = 0; r < listed; ++r) {
+	    component[members[r]] = -1;
+	}
+    }
+
+    /**
+     * Returns the number of pieces.
+     *
+     * @return	The number of pieces
+     */
+    public int numberOfPieces() {
+	return count;
+    }
+
+    /**
+     * Returns the cycle the pieces were found for.
+     *
+     * @return	The vertices of the cycle, in order
+     */
+    public int[] cycle() {
+	return cycle;
+    }
+
+    /**
+     * Returns the piece an edge of the graph belongs to.  Once the
+     * subproblem of a piece has been entered, its edges belong to the
+     * pieces found inside it instead.
+     *
+     * @param index	The index of the edge, as used by CSRGraph.target
+     * @return		The number of its piece, or -1 for an edge of the
+     * 			cycle or outside the view
+     */
+    public int pieceOf(int index) {
+	int piece = owner[index] - firstId;
+	return piece >= 0 && piece < count ? piece : -1;
+    }
+
+    /**
+     * Returns where a piece attaches to the cycle.
+     *
+     * @param piece	The number of the piece
+     * @return		The positions on the cycle of its attachments, in
+     * 			increasing order
+     */
+    public int[] attachments(int piece) {
+	return attach[piece];
+    }
+
+    /**
+     * Returns where every piece attaches to the cycle, in the form
+     * Interlacement takes.
+     *
+     * @return	The attachment positions of every piece, by number
+     */
+    public int[][] attachments() {
+	return attach;
+    }
+
+    /**
+     * Returns the number of edges of a piece.
+     *
+     * @param piece	The number of the piece
+     * @return		Its number of edges, the cycle not counted
+     */
+    public int numberOfEdges(int piece) {
+	return edges[piece];
+    }
+
+    /**
+     * Determines whether a piece is a path, as CSRGraph.IsPath would for
+     * the graph of the piece.
+     *
+     * @param piece	The number of the piece
+     * @return		True if the piece is a path
+     */
+    public boolean isPath(int piece) {
+	return path[piece];
+    }
+
+    /**
+     * Returns the view of a piece on its own, without the cycle.
+     *
+     * @param piece	The number of the piece
+     * @return		The view holding the edges of the piece
+     */
+    public SubgraphView piece(int piece) {
+	int[] vertices;
+	if(piece < chords) {
+	    vertices = new int[] { cycle[chordEnds.from(piece)],
+				   cycle[chordEnds.to(piece)] };
+	} else {
+	    int c = piece - chords;
+	    vertices = Arrays.copyOfRange(members, memberStart[c],
+						    memberStart[c+1]);
+	}
+	return new SubgraphView(view.graph(), view.workspace(),
+				firstId + piece, vertices, edges[piece]);
+    }
+
+    /**
+     * Moves the edges of the cycle to the view of a piece and returns
+     * that view, which then holds the piece together with the cycle, as
+     * the subproblem of the piece needs.  The views of the other pieces
+     * lose the cycle again when their turn comes.
+     *
+     * @param piece	The number of the piece, which must not be a chord
+     * @return		The view of the piece and the cycle
+     */
+    public SubgraphView withCycle(int piece) {
+	CSRGraph graph = view.graph();
+	int id = firstId + piece;
+	for(int i = 0; i < cycle.length; ++i) {
+	    int next = cycle[(i+1) % cycle.length];
+	    owner[graph.edgeIndex(cycle[i], next)] = id;
+	    owner[graph.edgeIndex(next, cycle[i])] = id;
+	}
+
+	int c = piece - chords;
+	int inner = memberStart[c+1] - memberStart[c];
+	int[] vertices = new int[inner + cycle.length];
+	System.arraycopy(members, memberStart[c], vertices, 0, inner);
+	System.arraycopy(cycle, 0, vertices, inner, cycle.length);
+	return new SubgraphView(graph, view.workspace(), id, vertices,
+				edges[piece] + cycle.length);
+    }
+
+    /**
+     * Builds the graph of a piece, labelled with the vertices of the
+     * whole graph.  The subproblem of the piece must not have been
+     * entered yet.
+     *
+     * @param piece	The number of the piece
+     * @return		The graph of the piece
+     */
+    public CSRGraph pieceGraph(int piece) {
+	if(piece < chords) {
+	    return CSRGraph.fromEdges(
+		new int[] { cycle[chordEnds.from(piece)] },
+		new int[] { cycle[chordEnds.to(piece)] }, 1);
+	}
+	CSRGraph graph = view.graph();
+	int c = piece - chords;
+	// An edge between two members is met from both ends; the graph
+	// merges the two.
+	EdgeList pieceEdges = new EdgeList(2 * edges[piece]);
+	for(int r = memberStart[c]; r < memberStart[c+1]; ++r) {
+	    int u = members[r];
+	    for(int k = graph.edgeStart(u); k < graph.edgeEnd(u); ++k) {
+		if(owner[k] == firstId + piece) {
+		    pieceEdges.addEdge(u, graph.target(k));
+		}
+	    }
+	}
+	return pieceEdges.toCSRGraph();
+    }
+
+    /**
+     * Builds the graphs of all the pieces, in order.
+     *
+     * @return	The pieces, as FindPieces returns them
+     */
+    public List<CSRGraph> pieceGraphs() {
+	List<CSRGraph> pieces = new ArrayList<CSRGraph>(count);
+	for(int piece = 0; piece < count; ++piece) {
+	    pieces.add(pieceGraph(piece));
+	}
+	return pieces;
+    }
+}
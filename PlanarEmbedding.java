@@ -0,0 +1,245 @@
+/*
+ * PlanarEmbedding.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.util.Arrays;
+
+/**
+ * This class is a combinatorial embedding of a graph in the plane: the
+ * clockwise order of the neighbors around every vertex.  The rotation is
+ * one int array laid out as the graph's targets array, so the neighbors
+ * of vertex v, in order, are rotation[graph.edgeStart(v)] up to
+ * rotation[graph.edgeEnd(v) - 1]; only where the order starts around a
+ * vertex is arbitrary.
+ *
+ * Verify checks a rotation in O(n+m) time without testing the graph
+ * again.  It traces the faces: leaving a vertex along an edge, a face
+ * turns at the far end to the neighbor next after the one it came from.
+ * A rotation system is an embedding in the plane exactly when each
+ * connected component, with V vertices, E edges and F faces traced, has
+ * V - E + F = 2.
+ *
+ * @author Matthew McCarty
+ */
+
+public final class PlanarEmbedding {
+    private final CSRGraph graph;
+    private final int[] rotation;
+
+    private PlanarEmbedding(CSRGraph graph, int[] rotation) {
+	this.graph = graph;
+	this.rotation = rotation;
+    }
+
+    /**
+     * Embeds a graph in the plane with the left-right engine.
+     *
+     * @param graph	The given graph
+     * @return		The embedding, or null if the graph is nonplanar
+     */
+    public static PlanarEmbedding Of(CSRGraph graph) {
+	int[] rotation = LRPlanarity.Embedding(graph);
+	return rotation == null ? null : new PlanarEmbedding(graph, rotation);
+    }
+
+    /**
+     * Returns the graph that is embedded.
+     *
+     * @return	The graph
+     */
+    public CSRGraph graph() {
+	return graph;
+    }
+
+    /**
+     * Returns the rotation of every vertex, laid out as the graph's
+     * targets array.  The array is not copied and must not be changed.
+     *
+     * @return	The rotation
+     */
+    public int[] rotation() {
+	return rotation;
+    }
+
+    /**
+     * Returns the neighbors of a vertex in clockwise order.
+     *
+     * @param vertex	The given vertex
+     * @return		Its neighbors
+     */
+    public int[] rotation(int vertex) {
+	return Arrays.copyOfRange(rotation, graph.edgeStart(vertex),
+				  graph.edgeEnd(vertex));
+    }
+
+    /**
+     * Returns the number of faces of the embedding, counting the outer
+     * face of every connected component that has an edge.
+     *
+     * @return	The number of faces
+     */
+    public int numberOfFaces() {
+	return CountFaces(graph, rotation);
+    }
+
+    /**
+     * Writes out the rotation of every vertex that has a neighbor, one
+     * line "v: w1 w2 ..." per vertex, with the labels of the graph or,
+     * if given, the interner's labels for them.
+     *
+     * @param interner	The interner the graph's labels are ids of, or
+     * 			null
+     * @return		The lines
+     */
+    public String format(VertexInterner interner) {
+	StringBuilder text = new StringBuilder();
+	for(int v = 0; v < graph.numberOfVertices(); ++v) {
+	    if(graph.degree(v) == 0) {
+		continue;
+	    }
+	    int[] vertex = {v};
+	    int[] neighbors = rotation(v);
+	    if(interner != null) {
+		text.append(interner.format(graph, vertex)).append(':');
+		text.append(' ').append(interner.format(graph, neighbors));
+	    } else {
+		text.append(graph.label(v)).append(':');
+		for(int w : neighbors) {
+		    text.append(' ').append(graph.label(w));
+		}
+	    }
+	    text.append(String.format("%n"));
+	}
+	return text.toString();
+    }
+
+    public String toString() {
+	return format(null);
+    }
+
+    /**
+     * Determines whether a rotation is a planar embedding of a graph.
+     *
+     * @param graph	The given graph
+     * @param rotation	The neighbors of every vertex in clockwise order,
+     * 			laid out as the graph's targets array
+     * @return		True if the rotation lists every vertex's neighbors
+     * 			once each and embeds the graph in the plane
+     */
+    public static boolean Verify(CSRGraph graph, int[] rotation) {
+	int faces = CountFaces(graph, rotation);
+	if(faces < 0) {
+	    return false;
+	}
+
+	// Count the vertices and components that have edges.
+	int n = graph.numberOfVertices();
+	boolean[] seen = new boolean[n];
+	int[] stack = new int[n];
+	int vertices = 0;
+	int components = 0;
+	for(int root = 0; root < n; ++root) {
+	    if(seen[root] || graph.degree(root) == 0) {
+		continue;
+	    }
+	    ++components;
+	    seen[root] = true;
+	    int top = 0;
+	    stack[top++] = root;
+	    while(top > 0) {
+		int v = stack[--top];
+		++vertices;
+		for(int k = graph.edgeStart(v); k < graph.edgeEnd(v); ++k) {
+		    int w = graph.target(k);
+		    if(!seen[w]) {
+			seen[w] = true;
+			stack[top++] = w;
+		    }
+		}
+	    }
+	}
+	return vertices - graph.numberOfEdges() + faces == 2 * components;
+    }
+
+    /**
+     * Traces the faces of a rotation.
+     *
+     * @return	The number of faces, or -1 if the rotation does not list
+     * 		every vertex's neighbors once each
+     */
+    private static int CountFaces(CSRGraph graph, int[] rotation) {
+	int n = graph.numberOfVertices();
+	int slots = 2 * graph.numberOfEdges();
+	if(rotation == null || rotation.length != slots) {
+	    return -1;
+	}
+
+	// Find where each neighbor sits in the rotation: slotOf maps the
+	// index of edge v-w in the targets array to the index of w in the
+	// rotation of v.
+	int[] place = new int[n];
+	int[] owner = new int[n];
+	Arrays.fill(owner, -1);
+	int[] slotOf = new int[slots];
+	for(int v = 0; v < n; ++v) {
+	    for(int i = graph.edgeStart(v); i < graph.edgeEnd(v); ++i) {
+		int w = rotation[i];
+		if(w < 0 || w >= n || owner[w] == v) {
+		    return -1;
+		}
+		owner[w] = v;
+		place[w] = i;
+	    }
+	    for(int k = graph.edgeStart(v); k < graph.edgeEnd(v); ++k) {
+		if(owner[graph.target(k)] != v) {
+		    return -1;
+		}
+		slotOf[k] = place[graph.target(k)];
+	    }
+	}
+
+	// Pair every slot with the slot of the same edge seen from its
+	// other end.  Rows are sorted, so the entries pointing back to
+	// smaller vertices appear in the order those vertices are visited.
+	int[] twin = new int[slots];
+	for(int v = 0; v < n; ++v) {
+	    place[v] = graph.edgeStart(v);
+	}
+	for(int v = 0; v < n; ++v) {
+	    for(int k = graph.edgeStart(v); k < graph.edgeEnd(v); ++k) {
+		int w = graph.target(k);
+		if(v < w) {
+		    int back = place[w]++;
+		    twin[slotOf[k]] = slotOf[back];
+		    twin[slotOf[back]] = slotOf[k];
+		}
+	    }
+	}
+
+	// Follow every face around.  The face entering w from v leaves w
+	// to the neighbor after v in the rotation of w.
+	boolean[] traced = new boolean[slots];
+	int faces = 0;
+	for(int s = 0; s < slots; ++s) {
+	    if(traced[s]) {
+		continue;
+	    }
+	    ++faces;
+	    int slot = s;
+	    while(!traced[slot]) {
+		traced[slot] = true;
+		int back = twin[slot];
+		int w = rotation[slot];
+		slot = back + 1 == graph.edgeEnd(w) ? graph.edgeStart(w)
+		    : back + 1;
+	    }
+	}
+	return faces;
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ * PlanarityBenchmark.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * This class benchmarks every stage of the pieces engine (FindCycle,
+ * PieceDecomposition, Interlacement.Build, Interlacement.IsBipartite),
+ * the whole pieces engine and the left-right engine, on the
+ * GraphGenerator families at several sizes.  The stages are run on the
+ * separating cycle of the graph, as the first level of PlanarityTesting
+ * would.
+ *
+ * Each benchmark is warmed up, then run in timed iterations until the
+ * measurement time is used up.  It reports operations per second, the
+ * bytes allocated per operation (from the thread allocation counter of
+ * the JVM, so only the calling thread is counted), the allocation rate
+ * and the collections during the measurement.  The output is a
+ * tab-separated table; saved to a file it can be given back with
+ * -baseline, and any benchmark whose throughput fell by more than the
+ * tolerance is marked REGRESSION and makes the exit status 1.
+ *
+ * A stage that takes longer than ten seconds for one operation is not
+ * run on the larger sizes.
+ *
+ * Usage: java PlanarityBenchmark [-sizes 100,1000] [-families grid,...]
+ *		[-stages findCycle,...] [-time ms] [-baseline file]
+ *		[-tolerance 0.2]
+ *
+ * @author Matthew McCarty
+ */
+
+public class PlanarityBenchmark {
+
+    /**
+     * The graph families benchmarked by default.
+     */
+    public static final String[] FAMILIES = {
+	"grid", "triangulation", "wheel", "chords", "k5", "k33"
+    };
+
+    /**
+     * The stages benchmarked by default.
+     */
+    public static final String[] STAGES = {
+	"findCycle", "findPieces", "interlacement", "bipartite", "pieces",
+	"lr"
+    };
+
+    /**
+     * Results are folded into this so that no benchmark is optimized
+     * away.
+     */
+    static volatile long sink;
+
+    private final long measureNanos;
+    private final long warmupNanos;
+    private final com.sun.management.ThreadMXBean threads;
+
+    /**
+     * Creates a benchmark run.
+     *
+     * @param measureMillis	The time spent measuring each benchmark;
+     * 				half of it is spent warming up first
+     */
+    public PlanarityBenchmark(long measureMillis) {
+	this.measureNanos = measureMillis * 1000000;
+	this.warmupNanos = measureNanos / 2;
+	java.lang.management.ThreadMXBean bean =
+	    ManagementFactory.getThreadMXBean();
+	this.threads = bean instanceof com.sun.management.ThreadMXBean
+	    ? (com.sun.management.ThreadMXBean) bean : null;
+    }
+
+    /**
+     * Runs the benchmarks given on the command line.
+     *
+     * @param args	The options, as in the usage above
+     */
+    public static void main(String[] args) {
+	String[] sizes = { "100", "1000" };
+	String[] families = FAMILIES;
+	String[] stages = STAGES;
+	long millis = 1000;
+	String baseline = null;
+	double tolerance = 0.2;
+
+	try {
+	    for(int i = 0; i + 1 < args.length; i += 2) {
+		if(args[i].equals("-sizes")) {
+		    sizes = args[i+1].split(",");
+		} else if(args[i].equals("-families")) {
+		    families = args[i+1].split(",");
+		} else if(args[i].equals("-stages")) {
+		    stages = args[i+1].split(",");
+		} else if(args[i].equals("-time")) {
+		    millis = Long.parseLong(args[i+1]);
+		} else if(args[i].equals("-baseline")) {
+		    baseline = args[i+1];
+		} else if(args[i].equals("-tolerance")) {
+		    tolerance = Double.parseDouble(args[i+1]);
+		} else {
+		    throw new IllegalArgumentException("Unknown option: " +
+						       args[i]);
+		}
+	    }
+	    if(args.length % 2 != 0) {
+		throw new IllegalArgumentException("Missing value for " +
+						   args[args.length - 1]);
+	    }
+
+	    Map<String, Double> previous = baseline == null
+		? new HashMap<String, Double>() : ReadBaseline(baseline);
+	    PlanarityBenchmark benchmark = new PlanarityBenchmark(millis);
+	    int regressions = benchmark.run(sizes, families, stages, previous,
+					    tolerance);
+	    if(regressions > 0) {
+		System.err.println(regressions + " regressions");
+		System.exit(1);
+	    }
+	} catch(Exception ex) {
+	    System.err.println(ex.getMessage());
+	    System.exit(2);
+	}
+    }
+
+    /**
+     * Runs every stage on every family at every size and prints a line
+     * per benchmark.
+     *
+     * @param sizes	The approximate numbers of vertices
+     * @param families	The graph families
+     * @param stages	The stages
+     * @param baseline	Operations per second from an earlier run, keyed
+     * 			by "family size stage"
+     * @param tolerance	The fraction of the baseline throughput that may
+     * 			be lost before a benchmark is a regression
+     * @return		The number of regressions
+     */
+    public int run(String[] sizes, String[] families, String[] stages,
+		   Map<String, Double> baseline, double tolerance) {
+	int regressions = 0;
+	Map<String, Boolean> tooSlow = new HashMap<String, Boolean>();
+
+	System.out.println("family\tvertices\tstage\tops/s\tbytes/op"
+			   + "\tMB/s\tgcs\tbaseline");
+	for(String size : sizes) {
+	    for(String family : families) {
+		CSRGraph graph = MakeGraph(family, Integer.parseInt(size));
+		Input input = new Input(graph);
+
+		for(String stage : stages) {
+		    if(tooSlow.containsKey(family + " " + stage)) {
+			continue;
+		    }
+		    Runnable operation = input.stage(stage);
+		    if(operation == null) {
+			continue;
+		    }
+		    Result result = measure(operation);
+		    if(result.nanosPerOp > 10e9) {
+			tooSlow.put(family + " " + stage, true);
+		    }
+
+		    String key = family + " " + size + " " + stage;
+		    String comparison = "";
+		    Double before = baseline.get(key);
+		    if(before != null) {
+			double ratio = result.opsPerSecond() / before;
+			comparison = String.format("%.2fx", ratio);
+			if(ratio < 1 - tolerance) {
+			    comparison += " REGRESSION";
+			    ++regressions;
+			}
+		    }
+		    System.out.println(String.format(
+			"%s\t%s\t%s\t%.2f\t%d\t%.1f\t%d\t%s", family, size,
+			stage, result.opsPerSecond(), result.bytesPerOp,
+			result.megabytesPerSecond(), result.collections,
+			comparison));
+		}
+	    }
+	}
+	return regressions;
+    }
+
+    /**
+     * Builds a graph of the given family with about n vertices.
+     *
+     * @param family	One of FAMILIES
+     * @param n		The approximate number of vertices
+     * @return		The graph
+     */
+    public static CSRGraph MakeGraph(String family, int n) {
+	Random random = new Random(n);
+	if(family.equals("grid")) {
+	    int side = Math.max(2, (int) Math.sqrt(n));
+	    return GraphGenerator.Grid(side, side);
+	} else if(family.equals("triangulation")) {
+	    return GraphGenerator.Triangulation(Math.max(n, 3), random);
+	} else if(family.equals("wheel")) {
+	    return GraphGenerator.Wheel(Math.max(n, 4));
+	} else if(family.equals("chords")) {
+	    return GraphGenerator.CycleWithChords(Math.max(n, 3), n, random);
+	} else if(family.equals("k5")) {
+	    return GraphGenerator.SubdividedK5(Math.max(0, (n - 5) / 10));
+	} else if(family.equals("k33")) {
+	    return GraphGenerator.SubdividedK33(Math.max(0, (n - 6) / 9));
+	}
+	throw new IllegalArgumentException("Unknown family: " + family);
+    }
+
+    /**
+     * Warms an operation up, then measures it.
+     */
+    private Result measure(Runnable operation) {
+	long start = System.nanoTime();
+	do {
+	    operation.run();
+	} while(System.nanoTime() - start < warmupNanos);
+
+	long collections = CollectionCount();
+	long bytes = allocatedBytes();
+	long operations = 0;
+	start = System.nanoTime();
+	long elapsed;
+	do {
+	    operation.run();
+	    ++operations;
+	    elapsed = System.nanoTime() - start;
+	} while(elapsed < measureNanos);
+
+	Result result = new Result();
+	result.nanosPerOp = (double) elapsed / operations;
+	result.bytesPerOp = bytes < 0 ? -1
+	    : (allocatedBytes() - bytes) / operations;
+	result.collections = CollectionCount() - collections;
+	return result;
+    }
+
+    /**
+     * Returns the bytes allocated so far by this thread, or -1 if the JVM
+     * does not count them.
+     */
+    private long allocatedBytes() {
+	if(threads == null || !threads.isThreadAllocatedMemorySupported()) {
+	    return -1;
+	}
+	return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Returns the number of collections so far, over all collectors.
+     */
+    private static long CollectionCount() {
+	long count = 0;
+	for(GarbageCollectorMXBean gc :
+		ManagementFactory.getGarbageCollectorMXBeans()) {
+	    count += Math.max(gc.getCollectionCount(), 0);
+	}
+	return count;
+    }
+
+    /**
+     * Reads the operations per second of an earlier run.
+     */
+    private static Map<String, Double> ReadBaseline(String filename)
+	throws IOException {
+	Map<String, Double> baseline = new HashMap<String, Double>();
+	BufferedReader reader = new BufferedReader(new FileReader(filename));
+	try {
+	    String line = reader.readLine();
+	    while((line = reader.readLine()) != null) {
+		String[] fields = line.split("\t");
+		if(fields.length >= 4) {
+		    baseline.put(fields[0] + " " + fields[1] + " " + fields[2],
+				 Double.valueOf(fields[3]));
+		}
+	    }
+	} finally {
+	    reader.close();
+	}
+	return baseline;
+    }
+
+    /**
+     * The inputs of the stages for one graph: its separating cycle and the
+     * pieces of that cycle.
+     */
+    private static final class Input {
+	private final CSRGraph graph;
+	private final int[] cycle;
+	private final PieceDecomposition pieces;
+
+	Input(CSRGraph graph) {
+	    this.graph = graph;
+	    this.cycle = TestPlanarity.FindSeparatingCycle(graph);
+	    this.pieces = cycle == null ? null
+		: PieceDecomposition.Of(graph, cycle);
+	}
+
+	/**
+	 * Returns the operation for a stage, or null if the stage does not
+	 * apply to this graph.
+	 */
+	Runnable stage(String name) {
+	    if(name.equals("findCycle")) {
+		return new Runnable() {
+		    public void run() {
+			sink += GraphUtilities.FindCycle(graph, 0).length;
+		    }
+		};
+	    } else if(name.equals("findPieces")) {
+		return cycle == null ? null : new Runnable() {
+		    public void run() {
+			sink += PieceDecomposition.Of(graph, cycle)
+			    .numberOfPieces();
+		    }
+		};
+	    } else if(name.equals("interlacement")) {
+		return cycle == null ? null : new Runnable() {
+		    public void run() {
+			sink += Interlacement.Build(pieces.attachments(),
+						    cycle.length).size();
+		    }
+		};
+	    } else if(name.equals("bipartite")) {
+		return cycle == null ? null : new Runnable() {
+		    public void run() {
+			sink += Interlacement.IsBipartite(pieces.attachments(),
+							 cycle.length) ? 1 : 0;
+		    }
+		};
+	    } else if(name.equals("pieces")) {
+		return new Runnable() {
+		    public void run() {
+			sink += TestPlanarity.IsPlanar(
+			    graph, TestPlanarity.Engine.PIECES) ? 1 : 0;
+		    }
+		};
+	    } else if(name.equals("lr")) {
+		return new Runnable() {
+		    public void run() {
+			sink += LRPlanarity.IsPlanar(graph) ? 1 : 0;
+		    }
+		};
+	    }
+	    throw new IllegalArgumentException("Unknown stage: " + name);
+	}
+    }
+
+    /**
+     * The measurements of one benchmark.
+     */
+    private static final class Result {
+	double nanosPerOp;
+	long bytesPerOp;
+	long collections;
+
+	double opsPerSecond() {
+	    return 1e9 / nanosPerOp;
+	}
+
+	double megabytesPerSecond() {
+	    return bytesPerOp < 0 ? 0
+		: bytesPerOp * opsPerSecond() / (1 << 20);
+	}
+    }
+}
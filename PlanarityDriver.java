@@ -0,0 +1,180 @@
+/*
+ * PlanarityDriver.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class runs the CSR pieces engine without recursion.  Instead of
+ * calling itself for every non-path piece, it keeps a stack on the heap
+ * with one frame per cycle whose pieces are still being worked through:
+ * the PieceDecomposition of that cycle and the next non-path piece to
+ * enter.  The pieces are entered in the same depth-first order as the
+ * recursion would, which the SubgraphViews need, so the answer is the
+ * same at any nesting depth, and no -Xss setting is needed for nested
+ * inputs such as wheels, whose every cycle has one piece inside the
+ * next.
+ *
+ * The interlacement graph of a cycle is checked as soon as its pieces
+ * are known, before any of them is entered, and a frame is popped as
+ * soon as its last non-path piece is entered rather than when that piece
+ * is done, so a chain of cycles with one non-path piece each keeps a
+ * single frame however long it is.  The stack thus holds a frame only
+ * for the cycles that still have a piece waiting, each of them no larger
+ * than its SubgraphView.
+ *
+ * This is what Engine.PIECES runs.  The parallel engine forks tasks of
+ * its own, each holding a thread until its children are done, but only
+ * up to ParallelPlanarity.MAX_FORK_DEPTH levels; below that, and for
+ * every piece under its threshold, it hands the subproblem to this
+ * class, so its stack use is bounded too.
+ *
+ * A run can be cancelled through a flag, which is checked before every
+ * piece is entered.  Each frame knows its depth, the number of pieces
+ * entered to reach its cycle, which PlanarityMetrics is given along with
+ * the time spent decomposing, checking and entering.
+ *
+ * @author Matthew McCarty
+ */
+
+public final class PlanarityDriver {
+
+    /**
+     * A cycle whose pieces are being worked through.
+     */
+    private static final class Frame {
+	final PieceDecomposition pieces;
+	final int depth;
+	int next;
+
+	Frame(PieceDecomposition pieces, int depth, int next) {
+	    this.pieces = pieces;
+	    this.depth = depth;
+	    this.next = next;
+	}
+    }
+
+    /**
+     * Tests a view for planarity, starting from the given cycle.
+     *
+     * @param view	The given view
+     * @param cycle	The vertices of the given cycle, in order, as
+     * 			vertices of the whole graph
+     * @param cancelled	A flag that stops the run when it is raised, or
+     * 			null
+     * @return		True if planar, false otherwise
+     * @throws CancellationException	If the flag was raised
+     */
+    public static boolean Test(SubgraphView view, int[] cycle,
+			       AtomicBoolean cancelled) {
+	return Test(view, cycle, cancelled, 0);
+    }
+
+    /**
+     * Tests a view for planarity, starting from the given cycle, which is
+     * at the given depth of a larger run.
+     *
+     * @param view	The given view
+     * @param cycle	The vertices of the given cycle, in order, as
+     * 			vertices of the whole graph
+     * @param cancelled	A flag that stops the run when it is raised, or
+     * 			null
+     * @param depth	The depth of the cycle
+     * @return		True if planar, false otherwise
+     * @throws CancellationException	If the flag was raised
+     */
+    static boolean Test(SubgraphView view, int[] cycle,
+			AtomicBoolean cancelled, int depth) {
+	ArrayDeque<Frame> stack = new ArrayDeque<Frame>();
+	if(!Push(stack, view, cycle, depth)) {
+	    return false;
+	}
+
+	while(!stack.isEmpty()) {
+	    if(cancelled != null && cancelled.get()) {
+		throw new CancellationException();
+	    }
+	    Frame frame = stack.peek();
+	    int piece = frame.next;
+	    frame.next = NextNonPath(frame.pieces, piece + 1);
+	    if(frame.next == frame.pieces.numberOfPieces()) {
+		stack.pop();
+	    }
+
+	    PlanarityMetrics.Span span = PlanarityMetrics.ENABLED ?
+		PlanarityMetrics.Begin(PlanarityMetrics.Phase.SUBPROBLEM,
+				       frame.depth + 1) : null;
+	    Subproblem next = Subproblem.ForPiece(frame.pieces, piece);
+	    if(span != null) {
+		span.end(next.view.numberOfEdges());
+		PlanarityMetrics.PIECE_EDGES.record(next.view.numberOfEdges());
+	    }
+	    if(!Push(stack, next.view, next.cycle, frame.depth + 1)) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Decomposes a subproblem and pushes a frame for it if it has a
+     * non-path piece.
+     *
+     * @return	False if the subproblem shows the graph is nonplanar
+     */
+    private static boolean Push(ArrayDeque<Frame> stack, SubgraphView view,
+				int[] cycle, int depth) {
+	if((3 * view.numberOfVertices() - 6) < view.numberOfEdges()) {
+	    return false;
+	}
+
+	PlanarityMetrics.Span span = PlanarityMetrics.ENABLED
+	    ? PlanarityMetrics.Begin(PlanarityMetrics.Phase.PIECES, depth)
+	    : null;
+	PieceDecomposition pieces = PieceDecomposition.Of(view, cycle);
+	if(span != null) {
+	    span.end(view.numberOfEdges());
+	    PlanarityMetrics.Level(depth, cycle.length,
+				   pieces.numberOfPieces(),
+				   view.numberOfEdges());
+	    span = PlanarityMetrics.Begin(
+		PlanarityMetrics.Phase.INTERLACEMENT, depth);
+	}
+
+	// Determine if the interlacement graph is bipartite, if not return
+	// nonplanar.  It is checked edge by edge as the edges are found.
+	boolean bipartite =
+	    Interlacement.IsBipartite(pieces.attachments(), cycle.length);
+	if(span != null) {
+	    span.end(pieces.numberOfPieces());
+	}
+	if(!bipartite) {
+	    return false;
+	}
+
+	int first = NextNonPath(pieces, 0);
+	if(first < pieces.numberOfPieces()) {
+	    stack.push(new Frame(pieces, depth, first));
+	}
+	return true;
+    }
+
+    /**
+     * Returns the first piece from the given one on that is not a path,
+     * or the number of pieces if there is none.
+     */
+    private static int NextNonPath(PieceDecomposition pieces, int piece) {
+	while(piece < pieces.numberOfPieces() && pieces.isPath(piece)) {
+	    ++piece;
+	}
+	return piece;
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * PlanarityMetrics.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class counts where a run of the engines spends its time and
+ * memory: for every phase, how often it ran, for how long and how many
+ * bytes it allocated, and histograms of the recursion depth, the pieces
+ * per cycle, the cycle lengths, the interlacement edges per check and the
+ * sizes of the pieces entered.  Every phase is also a JFR event, and
+ * every level of the recursion an event of its own, so a flight
+ * recording shows them on the timeline of each thread.
+ *
+ * All of it is off unless the JVM is started with
+ * -Dplanarity.metrics=true.  ENABLED is a constant, so the JIT drops the
+ * code behind every "if(PlanarityMetrics.ENABLED)" from the compiled
+ * engines when it is false, and an instrumented phase then costs nothing
+ * at all.  The counters are LongAdders, so threads of the parallel
+ * engine do not contend for them.  Summary writes them out and Reset
+ * starts them over.
+ *
+ * @author Matthew McCarty
+ */
+
+public final class PlanarityMetrics {
+
+    /**
+     * Whether metrics are collected, from the planarity.metrics system
+     * property.
+     */
+    public static final boolean ENABLED =
+	Boolean.getBoolean("planarity.metrics");
+
+    /**
+     * The phases that are timed.
+     */
+    public enum Phase {
+	/** Kernel.Reduce. */
+	KERNEL("kernel"),
+	/** Splitting a graph into its biconnected components. */
+	BLOCKS("blocks"),
+	/** Choosing the first cycle of a block. */
+	CYCLE("cycle"),
+	/** Finding the pieces of a cycle (FindPieces). */
+	PIECES("pieces"),
+	/** Checking that the interlacement graph is bipartite. */
+	INTERLACEMENT("interlacement"),
+	/** Turning a piece into its subproblem. */
+	SUBPROBLEM("subproblem"),
+	/** Testing a block on its BitsetGraph. */
+	BITSET("bitset"),
+	/** The left-right test. */
+	LEFT_RIGHT("left-right");
+
+	final String label;
+	final LongAdder count = new LongAdder();
+	final LongAdder nanos = new LongAdder();
+	final LongAdder bytes = new LongAdder();
+
+	Phase(String label) {
+	    this.label = label;
+	}
+    }
+
+    /** The depth of every subproblem decomposed. */
+    public static final Histogram DEPTH = new Histogram("depth");
+
+    /** The number of pieces of every cycle. */
+    public static final Histogram PIECES_PER_CYCLE =
+	new Histogram("pieces per cycle");
+
+    /** The length of every cycle decomposed. */
+    public static final Histogram CYCLE_LENGTH = new Histogram("cycle length");
+
+    /** The number of interlacement edges found by every check. */
+    public static final Histogram INTERLACEMENT_EDGES =
+	new Histogram("interlacement edges");
+
+    /** The number of edges of every non-path piece entered. */
+    public static final Histogram PIECE_EDGES = new Histogram("piece edges");
+
+    private static final Histogram[] HISTOGRAMS = {
+	DEPTH, PIECES_PER_CYCLE, CYCLE_LENGTH, INTERLACEMENT_EDGES, PIECE_EDGES
+    };
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+	AllocationCounter();
+
+    /**
+     * Starts timing a phase.  Only to be called if ENABLED.
+     *
+     * @param phase	The phase
+     * @param depth	The recursion depth it runs at, or -1 if there is
+     * 			none
+     * @return		The span to end when the phase is done
+     */
+    public static Span Begin(Phase phase, int depth) {
+	return new Span(phase, depth);
+    }
+
+    /**
+     * Records a level of the recursion as a JFR event, with its sizes, and
+     * adds them to the histograms.  Only to be called if ENABLED.
+     *
+     * @param depth		The depth of the level
+     * @param cycleLength	The length of its cycle
+     * @param pieces		The number of pieces of the cycle
+     * @param edges		The number of edges of the subproblem
+     */
+    public static void Level(int depth, int cycleLength, int pieces,
+			     int edges) {
+	DEPTH.record(depth);
+	CYCLE_LENGTH.record(cycleLength);
+	PIECES_PER_CYCLE.record(pieces);
+	LevelEvent event = new LevelEvent();
+	if(event.shouldCommit()) {
+	    event.depth = depth;
+	    event.cycleLength = cycleLength;
+	    event.pieces = pieces;
+	    event.edges = edges;
+	    event.commit();
+	}
+    }
+
+    /**
+     * Sets every counter and histogram back to zero.
+     */
+    public static void Reset() {
+	for(Phase phase : Phase.values()) {
+	    phase.count.reset();
+	    phase.nanos.reset();
+	    phase.bytes.reset();
+	}
+	for(Histogram histogram : HISTOGRAMS) {
+	    histogram.reset();
+	}
+    }
+
+    /**
+     * Writes out the phases and histograms, one per line.
+     *
+     * @return	The summary, or a note that metrics are off
+     */
+    public static String Summary() {
+	if(!ENABLED) {
+	    return "metrics off (run with -Dplanarity.metrics=true)";
+	}
+	StringBuilder text = new StringBuilder();
+	for(Phase phase : Phase.values()) {
+	    long count = phase.count.sum();
+	    if(count == 0) {
+		continue;
+	    }
+	    text.append(String.format(
+		"%-14s %10d runs %12.3f ms %10.1f us/run %10.1f MB%n",
+		phase.label, count, phase.nanos.sum() / 1e6,
+		phase.nanos.sum() / 1e3 / count,
+		phase.bytes.sum() / (double) (1 << 20)));
+	}
+	for(Histogram histogram : HISTOGRAMS) {
+	    if(histogram.count.sum() > 0) {
+		text.append(histogram).append(String.format("%n"));
+	    }
+	}
+	return text.toString();
+    }
+
+    /**
+     * Returns the allocation counter of the JVM's threads, or null if it
+     * cannot count.
+     */
+    private static com.sun.management.ThreadMXBean AllocationCounter() {
+	ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	if(threads instanceof com.sun.management.ThreadMXBean) {
+	    com.sun.management.ThreadMXBean counter =
+		(com.sun.management.ThreadMXBean) threads;
+	    if(counter.isThreadAllocatedMemorySupported() &&
+	       counter.isThreadAllocatedMemoryEnabled()) {
+		return counter;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Returns the bytes the calling thread has allocated so far, or 0 if
+     * they cannot be counted.
+     */
+    private static long Allocated() {
+	return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * One run of a phase, from Begin to end.
+     */
+    public static final class Span {
+	private final Phase phase;
+	private final int depth;
+	private final long start;
+	private final long allocated;
+	private final PhaseEvent event = new PhaseEvent();
+
+	Span(Phase phase, int depth) {
+	    this.phase = phase;
+	    this.depth = depth;
+	    event.begin();
+	    this.allocated = Allocated();
+	    this.start = System.nanoTime();
+	}
+
+	/**
+	 * Ends the phase and records it.
+	 *
+	 * @param size	The size of what the phase worked on: the pieces
+	 * 		for the interlacement check, the edges otherwise
+	 */
+	public void end(int size) {
+	    long nanos = System.nanoTime() - start;
+	    phase.count.increment();
+	    phase.nanos.add(nanos);
+	    phase.bytes.add(Allocated() - allocated);
+	    event.end();
+	    if(event.shouldCommit()) {
+		event.phase = phase.label;
+		event.depth = depth;
+		event.size = size;
+		event.commit();
+	    }
+	}
+    }
+
+    /**
+     * A histogram of counts in buckets of powers of two: bucket b holds
+     * the values of b bits, so 0 in bucket 0, 1 in 1, 2 and 3 in 2, and so
+     * on.
+     */
+    public static final class Histogram {
+	private final String name;
+	private final LongAdder[] buckets = new LongAdder[65];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	Histogram(String name) {
+	    this.name = name;
+	    for(int b = 0; b < buckets.length; ++b) {
+		buckets[b] = new LongAdder();
+	    }
+	}
+
+	/**
+	 * Adds a value, which must not be negative.
+	 *
+	 * @param value	The value
+	 */
+	public void record(long value) {
+	    buckets[64 - Long.numberOfLeadingZeros(value)].increment();
+	    count.increment();
+	    sum.add(value);
+	    max.accumulate(value);
+	}
+
+	void reset() {
+	    for(LongAdder bucket : buckets) {
+		bucket.reset();
+	    }
+	    count.reset();
+	    sum.reset();
+	    max.reset();
+	}
+
+	/**
+	 * Returns the largest value of the bucket holding the given
+	 * fraction of the values.
+	 */
+	private long percentile(double fraction, long total) {
+	    long seen = 0;
+	    for(int b = 0; b < buckets.length; ++b) {
+		seen += buckets[b].sum();
+		if(seen >= fraction * total) {
+		    return b == 0 ? 0 : (b == 64 ? Long.MAX_VALUE
+					 : (1L << b) - 1);
+		}
+	    }
+	    return max.get();
+	}
+
+	public String toString() {
+	    long total = count.sum();
+	    return String.format(
+		"%-20s %10d values, mean %.1f, p50 <= %d, p99 <= %d, max %d",
+		name, total, total == 0 ? 0.0 : sum.sum() / (double) total,
+		percentile(0.5, total), percentile(0.99, total), max.get());
+	}
+    }
+
+    /**
+     * The JFR event of a phase.
+     */
+    @Name("planarity.Phase")
+    @Label("Planarity Phase")
+    @Category("Planarity")
+    @Description("One run of a phase of a planarity engine")
+    static final class PhaseEvent extends Event {
+	@Label("Phase")
+	String phase;
+
+	@Label("Depth")
+	@Description("The recursion depth, or -1 outside the recursion")
+	int depth;
+
+	@Label("Size")
+	@Description("The pieces checked for interlacement, or the edges")
+	int size;
+    }
+
+    /**
+     * The JFR event of a level of the recursion.
+     */
+    @Name("planarity.Level")
+    @Label("Planarity Recursion Level")
+    @Category("Planarity")
+    @Description("A subproblem of the pieces engine and its cycle")
+    static final class LevelEvent extends Event {
+	@Label("Depth")
+	int depth;
+
+	@Label("Cycle Length")
+	int cycleLength;
+
+	@Label("Pieces")
+	int pieces;
+
+	@Label("Edges")
+	int edges;
+    }
+}
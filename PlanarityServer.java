@@ -0,0 +1,533 @@
+/*
+ * PlanarityServer.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps one JVM running and tests the graphs sent to it over
+ * a local TCP socket or a Unix-domain socket, so that neither the start
+ * of a JVM nor a cold JIT is paid for every graph.
+ *
+ * The protocol is made of lines.  A client sends the edges of a graph,
+ * one "u v" pair of vertex numbers per line, and ends the graph with a
+ * line holding a single '.'; the server answers with one line, "planar",
+ * "nonplanar" or "error: " and the reason.  Blank lines and lines
+ * starting with '#' are skipped.  Any number of graphs may be sent on one
+ * connection, without waiting for the answers, which come back in the
+ * order the graphs were sent.  The connection ends when the client
+ * closes it or sends "quit".  A line "stats" between graphs is answered
+ * with the number of graphs answered so far and, if the server has a
+ * ResultCache, its hits and misses.  A line "metrics" is answered with
+ * the lines of PlanarityMetrics.Summary, ended by a line holding a
+ * single '.'; the server must be run with -Dplanarity.metrics=true for
+ * them to be collected.
+ *
+ * Every connection is read on a thread of its own, and every graph is
+ * tested on another, both virtual threads if the JVM has them and
+ * threads of a cached pool otherwise.  The graphs being read or tested
+ * at once are bounded: a connection takes a permit before it reads a
+ * graph and the permit is given back once the answer is written, so a
+ * busy server stops reading and its clients are held back by their
+ * sockets.  The EdgeList a graph is read into and the Traversal it is
+ * tested with come from a pool and go back to it, so their arrays are
+ * grown once and then reused by later graphs.  The CSRGraph is not
+ * pooled: it is immutable, so it is built afresh from the EdgeList for
+ * every graph.
+ *
+ * Usage: java PlanarityServer [-engine pieces|parallel|lr]
+ *		[-inflight n] [-cache entries] [-cachefile file]
+ *		[-fingerprint edges|relabel] (-port n | -socket path)
+ *
+ * @author Matthew McCarty
+ */
+
+public class PlanarityServer implements Closeable {
+
+    /**
+     * The number of graphs in flight for every processor by default.
+     */
+    static final int IN_FLIGHT_PER_PROCESSOR = 4;
+
+    private final TestPlanarity.Engine engine;
+    private final ServerSocketChannel server;
+    private final SocketAddress address;
+    private final ExecutorService threads;
+    private final Semaphore inFlight;
+    private final ResultCache cache;
+    private final ConcurrentLinkedQueue<Workspace> workspaces =
+	new ConcurrentLinkedQueue<Workspace>();
+    private final AtomicLong graphs = new AtomicLong();
+
+    /**
+     * Starts a server from the command line and serves until it is
+     * killed.
+     *
+     * @param args	The options, as in the usage above
+     */
+    public static void main(String[] args) {
+	TestPlanarity.Engine engine = TestPlanarity.Engine.LEFT_RIGHT;
+	int maxInFlight = IN_FLIGHT_PER_PROCESSOR *
+	    Runtime.getRuntime().availableProcessors();
+	SocketAddress address = null;
+	int cacheSize = 0;
+	String cacheFile = null;
+	boolean relabel = true;
+
+	try {
+	    for(int i = 0; i < args.length; ++i) {
+		if(args[i].equals("-engine") && i + 1 < args.length) {
+		    engine = TestPlanarity.ParseEngine(args[++i]);
+		} else if(args[i].equals("-inflight") && i + 1 < args.length) {
+		    maxInFlight = Integer.parseInt(args[++i]);
+		} else if(args[i].equals("-port") && i + 1 < args.length) {
+		    address = new InetSocketAddress(
+			InetAddress.getLoopbackAddress(),
+			Integer.parseInt(args[++i]));
+		} else if(args[i].equals("-socket") && i + 1 < args.length) {
+		    address = UnixDomainSocketAddress.of(args[++i]);
+		} else if(args[i].equals("-cache") && i + 1 < args.length) {
+		    cacheSize = Integer.parseInt(args[++i]);
+		} else if(args[i].equals("-cachefile") && i + 1 < args.length) {
+		    cacheFile = args[++i];
+		} else if(args[i].equals("-fingerprint") &&
+			  i + 1 < args.length) {
+		    relabel = !args[++i].equals("edges");
+		} else {
+		    throw new Exception("Unknown option: " + args[i]);
+		}
+	    }
+	    if(address == null || maxInFlight < 1) {
+		throw new Exception(
+		    "Usage: java PlanarityServer [-engine pieces|parallel|lr]"
+		    + " [-inflight n] [-cache entries] [-cachefile file]"
+		    + " [-fingerprint edges|relabel] (-port n | -socket path)");
+	    }
+
+	    ResultCache cache = cacheSize > 0 || cacheFile != null
+		? new ResultCache(Math.max(cacheSize, 1), relabel, cacheFile)
+		: null;
+	    PlanarityServer server =
+		new PlanarityServer(address, engine, maxInFlight, cache);
+	    System.err.println("listening on " + server.address());
+	    server.serve();
+	} catch(Exception ex) {
+	    System.err.println(ex.getMessage());
+	}
+    }
+
+    /**
+     * Opens a server on the given address.  A UnixDomainSocketAddress
+     * gives a Unix-domain socket, whose file must not exist yet, and any
+     * other address a TCP socket.
+     *
+     * @param address		The address to listen on
+     * @param engine		The engine to test every graph with
+     * @param maxInFlight	The most graphs read or tested at once
+     * @throws IOException	If the socket cannot be opened
+     */
+    public PlanarityServer(SocketAddress address, TestPlanarity.Engine engine,
+			   int maxInFlight)
+	throws IOException {
+	this(address, engine, maxInFlight, null);
+    }
+
+    /**
+     * Opens a server on the given address, as above, that looks every
+     * graph up in a cache first.
+     *
+     * @param address		The address to listen on
+     * @param engine		The engine to test every graph with
+     * @param maxInFlight	The most graphs read or tested at once
+     * @param cache		The cache, or null for none
+     * @throws IOException	If the socket cannot be opened
+     */
+    public PlanarityServer(SocketAddress address, TestPlanarity.Engine engine,
+			   int maxInFlight, ResultCache cache)
+	throws IOException {
+	this.engine = engine;
+	this.cache = cache;
+	this.server = address instanceof UnixDomainSocketAddress
+	    ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+	    : ServerSocketChannel.open();
+	server.bind(address);
+	this.address = server.getLocalAddress();
+	this.threads = NewThreadPerTaskExecutor();
+	this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Returns the address the server listens on, with the port chosen if
+     * port 0 was asked for.
+     *
+     * @return	The address
+     */
+    public SocketAddress address() {
+	return address;
+    }
+
+    /**
+     * Returns the number of graphs answered so far.
+     *
+     * @return	The number of graphs
+     */
+    public long graphs() {
+	return graphs.get();
+    }
+
+    /**
+     * Accepts connections until the server is closed.
+     *
+     * @throws IOException	If accepting fails other than by the close
+     */
+    public void serve() throws IOException {
+	while(true) {
+	    final SocketChannel channel;
+	    try {
+		channel = server.accept();
+	    } catch(AsynchronousCloseException ex) {
+		return;
+	    }
+	    threads.execute(new Runnable() {
+		    public void run() {
+			handle(channel);
+		    }
+		});
+	}
+    }
+
+    /**
+     * Returns the line a "stats" request is answered with.
+     *
+     * @return	The numbers of graphs, hits and misses
+     */
+    public String stats() {
+	String text = "graphs " + graphs.get();
+	if(cache != null) {
+	    text += " hits " + cache.hits() + " misses " + cache.misses();
+	}
+	return text;
+    }
+
+    /**
+     * Returns the lines a "metrics" request is answered with, the last of
+     * them a single '.'.
+     *
+     * @return	The summary of PlanarityMetrics
+     */
+    public String metrics() {
+	StringBuilder text = new StringBuilder();
+	for(String line : PlanarityMetrics.Summary().split("\\R")) {
+	    if(line.length() > 0) {
+		text.append(line).append('\n');
+	    }
+	}
+	return text.append('.').toString();
+    }
+
+    /**
+     * Stops accepting connections, writes out the cache file if there is
+     * one and removes the file of a Unix-domain socket.  Connections
+     * already open are served to their end.
+     */
+    public void close() throws IOException {
+	server.close();
+	if(cache != null) {
+	    cache.close();
+	}
+	if(address instanceof UnixDomainSocketAddress) {
+	    Path path = ((UnixDomainSocketAddress) address).getPath();
+	    Files.deleteIfExists(path);
+	}
+    }
+
+    /**
+     * Creates an executor that starts a thread for every task: a virtual
+     * one if the JVM has them, which is looked up by reflection so that
+     * the server builds and runs on a JVM without them too, and a thread
+     * of a cached pool otherwise.
+     *
+     * @return	The executor
+     */
+    static ExecutorService NewThreadPerTaskExecutor() {
+	try {
+	    Method method =
+		Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+	    return (ExecutorService) method.invoke(null);
+	} catch(ReflectiveOperationException ex) {
+	    // No virtual threads, or only as a preview not enabled.
+	}
+	return Executors.newCachedThreadPool(new ThreadFactory() {
+		public Thread newThread(Runnable task) {
+		    Thread thread = new Thread(task, "planarity-server");
+		    thread.setDaemon(true);
+		    return thread;
+		}
+	    });
+    }
+
+    /**
+     * Reads the graphs of one connection and hands each to a thread of
+     * its own.  Each task waits for the one before it to write its answer
+     * before writing its own, so the answers keep the order of the
+     * graphs.
+     */
+    private void handle(SocketChannel channel) {
+	Future<?> previous = null;
+	try {
+	    BufferedReader input = new BufferedReader(
+		new InputStreamReader(Channels.newInputStream(channel),
+				      StandardCharsets.UTF_8), 1 << 16);
+
+	    while(true) {
+		inFlight.acquire();
+		Workspace workspace = workspaces.poll();
+		if(workspace == null) {
+		    workspace = new Workspace();
+		}
+		boolean submitted = false;
+		try {
+		    if(!Read(input, workspace)) {
+			break;
+		    }
+		    previous = threads.submit(new Request(workspace, previous,
+							  channel));
+		    submitted = true;
+		} finally {
+		    // Only a submitted request gives these back itself.
+		    if(!submitted) {
+			workspaces.add(workspace);
+			inFlight.release();
+		    }
+		}
+	    }
+	} catch(InterruptedException ex) {
+	    Thread.currentThread().interrupt();
+	} catch(IOException ex) {
+	    // The client went away; nothing is left to answer.
+	} finally {
+	    try {
+		if(previous != null) {
+		    previous.get();
+		}
+	    } catch(InterruptedException ex) {
+		Thread.currentThread().interrupt();
+	    } catch(ExecutionException ex) {
+		// Already answered as an error, or the client is gone.
+	    }
+	    try {
+		channel.close();
+	    } catch(IOException ex) {
+		// Nothing more to do with this connection.
+	    }
+	}
+    }
+
+    /**
+     * Writes an answer to a connection.  The bytes go straight to the
+     * channel rather than through Channels.newOutputStream, whose writes
+     * wait for the lock the reading thread holds on a blocking channel
+     * while it waits for the next graph; the lock taken here only keeps
+     * the answers of one connection from mixing.
+     *
+     * @throws IOException	If the client went away
+     */
+    private static void Write(SocketChannel channel, String answer)
+	throws IOException {
+	ByteBuffer bytes =
+	    ByteBuffer.wrap(answer.getBytes(StandardCharsets.UTF_8));
+	synchronized(channel) {
+	    while(bytes.hasRemaining()) {
+		channel.write(bytes);
+	    }
+	}
+    }
+
+    /**
+     * Reads the edges of one graph into the emptied edge list of a
+     * workspace, and sets its error if the graph is malformed.
+     *
+     * @return	False if the connection ended before any line of a graph
+     */
+    private static boolean Read(BufferedReader input, Workspace workspace)
+	throws IOException {
+	EdgeList edges = workspace.edges;
+	edges.clear();
+	workspace.error = null;
+	workspace.stats = false;
+	workspace.metrics = false;
+	boolean started = false;
+	long line = 0;
+	String text;
+	while((text = input.readLine()) != null) {
+	    ++line;
+	    text = text.trim();
+	    if(text.equals(".")) {
+		return true;
+	    }
+	    if(text.length() == 0 || text.startsWith("#")) {
+		continue;
+	    }
+	    if(text.equals("quit") && !started) {
+		return false;
+	    }
+	    if(text.equals("stats") && !started) {
+		workspace.stats = true;
+		return true;
+	    }
+	    if(text.equals("metrics") && !started) {
+		workspace.metrics = true;
+		return true;
+	    }
+	    started = true;
+	    if(workspace.error == null && !ParseEdge(text, edges)) {
+		workspace.error =
+		    "line " + line + ": expected two vertex numbers";
+	    }
+	}
+	workspace.error = "graph not ended with \".\"";
+	return started;
+    }
+
+    /**
+     * Appends the edge on a line of two vertex numbers, and anything after
+     * them, to the edge list.
+     *
+     * @return	False if the line does not start with two vertex numbers
+     */
+    private static boolean ParseEdge(String text, EdgeList edges) {
+	int end = WordEnd(text, 0);
+	int second = end;
+	while(second < text.length() &&
+	      Character.isWhitespace(text.charAt(second))) {
+	    ++second;
+	}
+	try {
+	    edges.addEdge(Integer.parseInt(text.substring(0, end)),
+			  Integer.parseInt(text.substring(
+			      second, WordEnd(text, second))));
+	    return true;
+	} catch(NumberFormatException ex) {
+	    return false;
+	}
+    }
+
+    /**
+     * Returns the index after the word starting at i.
+     */
+    private static int WordEnd(String text, int i) {
+	while(i < text.length() && !Character.isWhitespace(text.charAt(i))) {
+	    ++i;
+	}
+	return i;
+    }
+
+    /**
+     * The arrays one graph is read into and tested with, reused from
+     * graph to graph, and the error found while reading it.
+     */
+    private static final class Workspace {
+	final EdgeList edges = new EdgeList();
+	final Traversal traversal = new Traversal();
+	String error;
+	boolean stats;
+	boolean metrics;
+    }
+
+    /**
+     * The test of one graph and the writing of its answer.
+     */
+    private final class Request implements Callable<Void> {
+	private final Workspace workspace;
+	private final Future<?> previous;
+	private final SocketChannel channel;
+
+	Request(Workspace workspace, Future<?> previous,
+		SocketChannel channel) {
+	    this.workspace = workspace;
+	    this.previous = previous;
+	    this.channel = channel;
+	}
+
+	public Void call() throws Exception {
+	    try {
+		String answer = workspace.stats || workspace.metrics ? null
+		    : workspace.error != null ? "error: " + workspace.error
+		    : test();
+		if(previous != null) {
+		    try {
+			previous.get();
+		    } catch(ExecutionException ex) {
+			// Its answer failed to go out; try this one anyway.
+		    }
+		}
+		if(answer != null) {
+		    graphs.incrementAndGet();
+		} else {
+		    answer = workspace.stats ? stats() : metrics();
+		}
+		Write(channel, answer + "\n");
+		return null;
+	    } finally {
+		workspaces.add(workspace);
+		inFlight.release();
+	    }
+	}
+
+	/**
+	 * Tests the graph with the pooled traversal workspace.
+	 */
+	private String test() {
+	    Traversal.Use(workspace.traversal);
+	    try {
+		CSRGraph graph = workspace.edges.toCSRGraph();
+		boolean planar = cache != null ? cache.isPlanar(graph, engine)
+		    : TestPlanarity.IsPlanar(graph, engine);
+		return planar ? "planar" : "nonplanar";
+	    } catch(RuntimeException ex) {
+		return "error: " + ex.getMessage();
+	    } catch(StackOverflowError ex) {
+		return "error: graph too deep for the stack";
+	    } catch(Throwable ex) {
+		// An answer must go out whatever happened, or the answers
+		// to the graphs pipelined after this one would be off by
+		// one.
+		return "error: " + ex;
+	    } finally {
+		Traversal.Use(null);
+	    }
+	}
+    }
+}
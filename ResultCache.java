@@ -0,0 +1,381 @@
+/*
+ * ResultCache.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class remembers the planarity of the graphs it has seen, keyed by
+ * their GraphFingerprint, so that a graph sent again, with its edges in
+ * another order or, if relabelling is ignored, under other labels, is
+ * answered without being tested.  All the engines give the same answers,
+ * so one cache serves them all.
+ *
+ * The most recently used results are kept in memory, up to a fixed
+ * number.  A cache may also have a table in a memory-mapped file that
+ * outlives the run: a fixed number of slots, each holding the 128-bit
+ * hash of a fingerprint and its result, probed linearly from the slot
+ * the hash picks, and overwritten from there when the probes are all
+ * taken.  The edges of every fingerprint put in the table are appended
+ * to a second file, named after the first with ".edges" added, and a
+ * slot also holds where they start; a result is only taken from the
+ * table once they compare equal to the edges of the fingerprint looked
+ * up, so, as in memory, a hash collision cannot return the result of
+ * another graph.  The edges of overwritten slots are not reclaimed.  The
+ * files must not be used by two runs at once.
+ *
+ * The cache may be used by many threads.  The hits and misses are
+ * counted; a result found only in the file counts as a hit and is also
+ * counted as a disk hit.
+ *
+ * @author Matthew McCarty
+ */
+
+public final class ResultCache implements Closeable {
+
+    /**
+     * The number of results kept in memory by default.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * The number of slots of a new file by default.
+     */
+    public static final int DEFAULT_SLOTS = 1 << 20;
+
+    private final Map<GraphFingerprint, Boolean> entries;
+    private final boolean relabel;
+    private final DiskTable disk;
+    private long hits;
+    private long misses;
+    private long diskHits;
+
+    /**
+     * Creates a cache held in memory only.
+     *
+     * @param capacity	The most results kept in memory
+     * @param relabel	Whether relabelled copies of a graph should share
+     * 			its result
+     */
+    public ResultCache(int capacity, boolean relabel) {
+	this(capacity, relabel, (DiskTable) null);
+    }
+
+    /**
+     * Creates a cache backed by the given file, which is made with the
+     * default number of slots if it does not exist.
+     *
+     * @param capacity	The most results kept in memory
+     * @param relabel	Whether relabelled copies of a graph should share
+     * 			its result
+     * @param filename	The file, or null for none
+     * @throws IOException	If the file cannot be opened or is not a
+     * 				cache file
+     */
+    public ResultCache(int capacity, boolean relabel, String filename)
+	throws IOException {
+	this(capacity, relabel, filename == null ? null
+	     : new DiskTable(filename, DEFAULT_SLOTS));
+    }
+
+    private ResultCache(final int capacity, boolean relabel, DiskTable disk) {
+	this.relabel = relabel;
+	this.disk = disk;
+	this.entries =
+	    new LinkedHashMap<GraphFingerprint, Boolean>(16, 0.75f, true) {
+		protected boolean removeEldestEntry(
+		    Map.Entry<GraphFingerprint, Boolean> eldest) {
+		    return size() > capacity;
+		}
+	    };
+    }
+
+    /**
+     * Tests a graph for planarity with the given engine, unless its result
+     * is already known.
+     *
+     * @param graph	The given graph
+     * @param engine	The engine to test it with
+     * @return		True if planar, false otherwise
+     */
+    public boolean isPlanar(CSRGraph graph, TestPlanarity.Engine engine) {
+	GraphFingerprint fingerprint = GraphFingerprint.Of(graph, relabel);
+	Boolean known = get(fingerprint);
+	if(known != null) {
+	    return known;
+	}
+	boolean planar = TestPlanarity.IsPlanar(graph, engine);
+	put(fingerprint, planar);
+	return planar;
+    }
+
+    /**
+     * Looks up the result for a fingerprint, and counts the hit or miss.
+     *
+     * @param fingerprint	The fingerprint
+     * @return			The result, or null if it is not known
+     */
+    public synchronized Boolean get(GraphFingerprint fingerprint) {
+	Boolean known = entries.get(fingerprint);
+	if(known == null && disk != null) {
+	    known = disk.get(fingerprint);
+	    if(known != null) {
+		++diskHits;
+		entries.put(fingerprint, known);
+	    }
+	}
+	if(known != null) {
+	    ++hits;
+	} else {
+	    ++misses;
+	}
+	return known;
+    }
+
+    /**
+     * Records the result for a fingerprint.
+     *
+     * @param fingerprint	The fingerprint
+     * @param planar		The result
+     */
+    public synchronized void put(GraphFingerprint fingerprint,
+				 boolean planar) {
+	entries.put(fingerprint, planar);
+	if(disk != null) {
+	    disk.put(fingerprint, planar);
+	}
+    }
+
+    /**
+     * Returns the number of lookups that found a result.
+     *
+     * @return	The number of hits
+     */
+    public synchronized long hits() {
+	return hits;
+    }
+
+    /**
+     * Returns the number of lookups that found none.
+     *
+     * @return	The number of misses
+     */
+    public synchronized long misses() {
+	return misses;
+    }
+
+    /**
+     * Returns the number of hits found in the file rather than in memory.
+     *
+     * @return	The number of disk hits
+     */
+    public synchronized long diskHits() {
+	return diskHits;
+    }
+
+    /**
+     * Writes the file's table out to the disk and closes its edges.
+     *
+     * @throws IOException	If the edges cannot be written
+     */
+    public synchronized void close() throws IOException {
+	if(disk != null) {
+	    disk.close();
+	}
+    }
+
+    public synchronized String toString() {
+	return "cache: " + hits + " hits (" + diskHits + " from disk), " +
+	    misses + " misses, " + entries.size() + " in memory";
+    }
+
+    /**
+     * The table of results in a memory-mapped file: a header of the magic
+     * number, the version and the number of slots, then the slots, each
+     * the two halves of a hash, where the fingerprint's edges start in the
+     * edges file and an int that is 0 for an empty slot, 1 for planar and
+     * 2 for nonplanar, padded to 32 bytes.  The edges file holds, for
+     * every fingerprint, whether it is canonical, its vertices, the length
+     * of its edges array and the array.
+     */
+    private static final class DiskTable {
+	static final int MAGIC = 0x43524c50;
+	static final int VERSION = 2;
+	static final int HEADER = 16;
+	static final int SLOT = 32;
+	static final int PROBES = 8;
+
+	private final MappedByteBuffer table;
+	private final int slots;
+	private final FileChannel edges;
+
+	DiskTable(String filename, int slots) throws IOException {
+	    RandomAccessFile file = new RandomAccessFile(filename, "rw");
+	    try {
+		FileChannel channel = file.getChannel();
+		boolean created = channel.size() == 0;
+		if(created) {
+		    table = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+					HEADER + (long) SLOT * slots);
+		    table.order(ByteOrder.LITTLE_ENDIAN);
+		    table.putInt(0, MAGIC);
+		    table.putInt(4, VERSION);
+		    table.putInt(8, slots);
+		} else {
+		    table = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+					channel.size());
+		    table.order(ByteOrder.LITTLE_ENDIAN);
+		    slots = channel.size() < HEADER ? 0 : table.getInt(8);
+		    if(channel.size() < HEADER || table.getInt(0) != MAGIC ||
+		       table.getInt(4) != VERSION || slots <= 0 ||
+		       Integer.bitCount(slots) != 1 ||
+		       channel.size() != HEADER + (long) SLOT * slots) {
+			throw new IOException(filename +
+					      ": not a result cache file");
+		    }
+		}
+		this.slots = slots;
+		this.edges = new RandomAccessFile(filename + ".edges", "rw")
+		    .getChannel();
+		if(created) {
+		    edges.truncate(0);
+		}
+	    } finally {
+		file.close();
+	    }
+	}
+
+	Boolean get(GraphFingerprint fingerprint) {
+	    int home = (int) fingerprint.high() & (slots - 1);
+	    for(int probe = 0; probe < PROBES; ++probe) {
+		int offset = HEADER + SLOT * ((home + probe) & (slots - 1));
+		int state = table.getInt(offset + 24);
+		if(state == 0) {
+		    return null;
+		}
+		if(table.getLong(offset) == fingerprint.high() &&
+		   table.getLong(offset + 8) == fingerprint.low()) {
+		    return confirm(table.getLong(offset + 16), fingerprint)
+			? Boolean.valueOf(state == 1) : null;
+		}
+	    }
+	    return null;
+	}
+
+	void put(GraphFingerprint fingerprint, boolean planar) {
+	    int home = (int) fingerprint.high() & (slots - 1);
+	    int target = home;
+	    for(int probe = 0; probe < PROBES; ++probe) {
+		int slot = (home + probe) & (slots - 1);
+		int offset = HEADER + SLOT * slot;
+		if(table.getInt(offset + 24) == 0 ||
+		   (table.getLong(offset) == fingerprint.high() &&
+		    table.getLong(offset + 8) == fingerprint.low())) {
+		    target = slot;
+		    break;
+		}
+	    }
+	    int offset = HEADER + SLOT * target;
+	    table.putLong(offset, fingerprint.high());
+	    table.putLong(offset + 8, fingerprint.low());
+	    table.putLong(offset + 16, append(fingerprint));
+	    table.putInt(offset + 24, planar ? 1 : 2);
+	}
+
+	/**
+	 * Appends the edges of a fingerprint to the edges file.
+	 *
+	 * @return	Where they start
+	 */
+	private long append(GraphFingerprint fingerprint) {
+	    int[] array = fingerprint.edges();
+	    ByteBuffer bytes = ByteBuffer.allocate(12 + 4 * array.length)
+		.order(ByteOrder.LITTLE_ENDIAN);
+	    bytes.putInt(fingerprint.isCanonical() ? 1 : 0);
+	    bytes.putInt(fingerprint.vertices());
+	    bytes.putInt(array.length);
+	    bytes.asIntBuffer().put(array);
+	    bytes.clear();
+	    try {
+		long start = edges.size();
+		for(long at = start; bytes.hasRemaining(); ) {
+		    at += edges.write(bytes, at);
+		}
+		return start;
+	    } catch(IOException ex) {
+		throw new UncheckedIOException(ex);
+	    }
+	}
+
+	/**
+	 * Determines whether the edges stored at a position of the edges
+	 * file are those of a fingerprint.  Edges that cannot be read
+	 * confirm nothing.
+	 */
+	private boolean confirm(long start, GraphFingerprint fingerprint) {
+	    int[] array = fingerprint.edges();
+	    try {
+		ByteBuffer header = Read(edges, start, 12);
+		if(header == null ||
+		   header.getInt(0) != (fingerprint.isCanonical() ? 1 : 0) ||
+		   header.getInt(4) != fingerprint.vertices() ||
+		   header.getInt(8) != array.length) {
+		    return false;
+		}
+		ByteBuffer stored = Read(edges, start + 12, 4 * array.length);
+		if(stored == null) {
+		    return false;
+		}
+		IntBuffer ints = stored.asIntBuffer();
+		for(int i = 0; i < array.length; ++i) {
+		    if(ints.get(i) != array[i]) {
+			return false;
+		    }
+		}
+		return true;
+	    } catch(IOException ex) {
+		return false;
+	    }
+	}
+
+	/**
+	 * Reads a number of bytes from a position of a file.
+	 *
+	 * @return	The bytes, or null if the file ends before them
+	 */
+	private static ByteBuffer Read(FileChannel file, long start,
+				       int length) throws IOException {
+	    ByteBuffer bytes =
+		ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+	    while(bytes.hasRemaining()) {
+		if(file.read(bytes, start + bytes.position()) < 0) {
+		    return null;
+		}
+	    }
+	    bytes.flip();
+	    return bytes;
+	}
+
+	void close() throws IOException {
+	    table.force();
+	    edges.force(false);
+	    edges.close();
+	}
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * ServerCheck.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class checks that a PlanarityServer answers a client that keeps
+ * its connection open.  It starts a server on a free local port, sends
+ * two graphs and a "stats" line on one connection without waiting in
+ * between and without closing its side, and reads the three answers,
+ * giving up on any that takes longer than the timeout.
+ *
+ * Usage: java ServerCheck [timeoutMillis]
+ *
+ * @author Matthew McCarty
+ */
+
+public class ServerCheck {
+
+    /**
+     * Runs the check and exits with status 1 if it fails.
+     *
+     * @param args	The time to wait for each answer, in milliseconds
+     */
+    public static void main(String[] args) throws Exception {
+	int timeout = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+	if(!CheckPipelining(timeout)) {
+	    System.exit(1);
+	}
+    }
+
+    /**
+     * Sends a triangle, K5 and "stats" on one open connection and checks
+     * the answers.
+     *
+     * @param timeout	The time to wait for each answer, in milliseconds
+     * @return		True if all three answers came back as expected
+     * @throws IOException	If the server cannot be started or reached
+     */
+    public static boolean CheckPipelining(int timeout) throws IOException {
+	final PlanarityServer server = new PlanarityServer(
+	    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+	    TestPlanarity.Engine.LEFT_RIGHT, 4);
+	Thread serving = new Thread(new Runnable() {
+		public void run() {
+		    try {
+			server.serve();
+		    } catch(IOException ex) {
+			System.err.println(ex.getMessage());
+		    }
+		}
+	    });
+	serving.setDaemon(true);
+	serving.start();
+
+	String[] expected = { "planar", "nonplanar", "graphs 2" };
+	boolean passed = true;
+	Socket socket = new Socket();
+	try {
+	    socket.connect(server.address(), timeout);
+	    socket.setSoTimeout(timeout);
+	    OutputStream output = socket.getOutputStream();
+	    StringBuilder request = new StringBuilder("0 1\n1 2\n2 0\n.\n");
+	    for(int u = 0; u < 5; ++u) {
+		for(int v = u + 1; v < 5; ++v) {
+		    request.append(u).append(' ').append(v).append('\n');
+		}
+	    }
+	    request.append(".\nstats\n");
+	    output.write(request.toString().getBytes(StandardCharsets.UTF_8));
+	    output.flush();
+
+	    BufferedReader input = new BufferedReader(
+		new InputStreamReader(socket.getInputStream(),
+				      StandardCharsets.UTF_8));
+	    for(String answer : expected) {
+		String line;
+		try {
+		    line = input.readLine();
+		} catch(SocketTimeoutException ex) {
+		    line = "no answer within " + timeout + " ms";
+		}
+		if(!answer.equals(line)) {
+		    System.out.println("expected \"" + answer + "\", got " +
+				       (line == null ? "end of stream"
+					: "\"" + line + "\""));
+		    passed = false;
+		    break;
+		}
+	    }
+	} finally {
+	    socket.close();
+	    server.close();
+	}
+	System.out.println(passed ? "pipelining ok" : "pipelining FAILED");
+	return passed;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * SubgraphView.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.util.Arrays;
+
+/**
+ * This class is a subgraph of a CSRGraph that is not stored on its own.
+ * The views of one graph share a single array holding, for every edge of
+ * the graph, the number of the view that edge currently belongs to, and
+ * a view is just its number, the list of its vertices and its number of
+ * edges.  Its edges are walked by walking the edges of the whole graph
+ * and skipping those that belong to another view.
+ *
+ * PieceDecomposition hands every piece of a view a new number and moves
+ * the piece's edges to it, and the subproblem of a piece takes the edges
+ * of the cycle as well, so the recursion of the pieces engine never
+ * copies or relabels a graph: what it keeps per level is the cycle, the
+ * vertex lists and the attachments, all of them ints.  A piece's view
+ * loses its edges to the pieces found in it in turn, so a view can only
+ * be decomposed once, and its parent's pieces have to be entered one at
+ * a time, as PlanarityDriver does.  Views of one graph are
+ * therefore not thread-safe.
+ *
+ * @author Matthew McCarty
+ */
+
+public final class SubgraphView {
+    private final CSRGraph graph;
+    private final int id;
+    private final int[] vertices;
+    private final int edgeCount;
+    private Workspace workspace;
+
+    /**
+     * The arrays shared by all the views of one graph.  Besides the owner
+     * of every edge, they hold the cycle positions and component numbers
+     * PieceDecomposition needs; it puts them back to -1 when it is done,
+     * so they never have to be cleared.
+     */
+    static final class Workspace {
+	final int[] owner;
+	final int[] position;
+	final int[] component;
+	int nextId = 1;
+
+	Workspace(CSRGraph graph) {
+	    owner = new int[2 * graph.numberOfEdges()];
+	    position = new int[graph.numberOfVertices()];
+	    component = new int[graph.numberOfVertices()];
+	    Arrays.fill(position, -1);
+	    Arrays.fill(component, -1);
+	}
+    }
+
+    /**
+     * Creates a view of a whole graph.  Nothing is allocated until the
+     * view is first decomposed.
+     *
+     * @param graph	The graph
+     * @return		The view holding all its vertices and edges
+     */
+    public static SubgraphView Whole(CSRGraph graph) {
+	return new SubgraphView(graph, null, 0, null, graph.numberOfEdges());
+    }
+
+    /**
+     * Creates a view of part of a graph.
+     *
+     * @param graph	The graph
+     * @param workspace	The arrays shared by the views of the graph
+     * @param id	The number of the view
+     * @param vertices	The vertices of the view, or null for all of them
+     * @param edgeCount	The number of edges of the view
+     */
+    SubgraphView(CSRGraph graph, Workspace workspace, int id, int[] vertices,
+		 int edgeCount) {
+	this.graph = graph;
+	this.workspace = workspace;
+	this.id = id;
+	this.vertices = vertices;
+	this.edgeCount = edgeCount;
+    }
+
+    /**
+     * Returns the graph this is a view of.
+     *
+     * @return	The whole graph
+     */
+    public CSRGraph graph() {
+	return graph;
+    }
+
+    /**
+     * Returns the number of vertices in the view.
+     *
+     * @return	The number of vertices
+     */
+    public int numberOfVertices() {
+	return vertices == null ? graph.numberOfVertices() : vertices.length;
+    }
+
+    /**
+     * Returns the number of edges in the view.
+     *
+     * @return	The number of edges
+     */
+    public int numberOfEdges() {
+	return edgeCount;
+    }
+
+    /**
+     * Returns one of the vertices of the view, as a vertex of the whole
+     * graph.
+     *
+     * @param index	Which vertex, from 0 to numberOfVertices() - 1
+     * @return		The vertex
+     */
+    public int vertex(int index) {
+	return vertices == null ? index : vertices[index];
+    }
+
+    /**
+     * Determines whether an edge of the whole graph is in the view.
+     *
+     * @param index	The index of the edge, as used by CSRGraph.target
+     * @return		True if the edge belongs to this view
+     */
+    public boolean contains(int index) {
+	return workspace == null || workspace.owner[index] == id;
+    }
+
+    /**
+     * Copies the view into a CSRGraph of its own, labelled with the
+     * vertices of the whole graph, for a thread that is to work on it
+     * while other views of the graph change.
+     *
+     * @return	The graph of the view's edges
+     */
+    public CSRGraph toCSRGraph() {
+	EdgeList edges = new EdgeList(edgeCount);
+	for(int r = 0; r < numberOfVertices(); ++r) {
+	    int u = vertex(r);
+	    for(int k = graph.edgeStart(u); k < graph.edgeEnd(u); ++k) {
+		if(contains(k) && u < graph.target(k)) {
+		    edges.addEdge(u, graph.target(k));
+		}
+	    }
+	}
+	return edges.toCSRGraph();
+    }
+
+    /**
+     * Returns the number of the view.
+     */
+    int id() {
+	return id;
+    }
+
+    /**
+     * Returns the arrays shared by the views of the graph, creating them
+     * for a whole graph the first time.
+     */
+    Workspace workspace() {
+	if(workspace == null) {
+	    workspace = new Workspace(graph);
+	}
+	return workspace;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Subproblem.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+/**
+ * This class is one step of the planarity recursion: a graph together
+ * with a cycle in it, given as the vertices of the cycle in order.  The
+ * graph is either a CSRGraph of its own, or a SubgraphView of the graph
+ * the recursion started from, in which case the cycle is given with the
+ * vertices of that graph.
+ *
+ * @author Matthew McCarty
+ */
+
+public final class Subproblem {
+    public final CSRGraph graph;
+    public final SubgraphView view;
+    public final int[] cycle;
+
+    /**
+     * Creates a subproblem.
+     *
+     * @param graph	The graph
+     * @param cycle	The vertices of a cycle in the graph, in order
+     */
+    public Subproblem(CSRGraph graph, int[] cycle) {
+	this(SubgraphView.Whole(graph), cycle);
+    }
+
+    /**
+     * Creates a subproblem on a view.
+     *
+     * @param view	The view
+     * @param cycle	The vertices of a cycle in the view, in order
+     */
+    public Subproblem(SubgraphView view, int[] cycle) {
+	this.graph = view.graph();
+	this.view = view;
+	this.cycle = cycle;
+    }
+
+    /**
+     * Builds the recursive step for a non-path piece: the piece with the
+     * whole cycle added to it, and as the new cycle a path through the
+     * piece between two consecutive attachments followed by the long way
+     * around the old cycle.
+     *
+     * @param piece	The piece, labelled with the vertices of the graph
+     * 			the cycle belongs to
+     * @param cycle	The cycle the piece was found for
+     * @return		The next subproblem
+     */
+    public static Subproblem ForPiece(CSRGraph piece, int[] cycle) {
+
+	// Get two consecutive attachments
+	int first = -1;
+	int second = -1;
+	int[] otherAttach = new int[Math.min(cycle.length,
+					     piece.numberOfVertices())];
+	int attachCount = 0;
+
+	for(int i = 0; i < cycle.length; ++i) {
+	    int attachVertex = piece.indexOf(cycle[i]);
+	    if(attachVertex >= 0) {
+		if(first < 0) {
+		    first = i;
+		} else if(second < 0) {
+		    second = i;
+		} else {
+		    otherAttach[attachCount++] = attachVertex;
+		}
+	    }
+	}
+
+	//Find path between consecutive attachments through piece
+	int[] pPath = GraphUtilities.FindPath(piece,
+	    piece.indexOf(cycle[first]), piece.indexOf(cycle[second]),
+	    otherAttach, attachCount);
+
+	// The new cycle is the path followed by the long way around the
+	// old cycle, from the second attachment back to the first.
+	int[] newCycle =
+	    new int[pPath.length - 1 + cycle.length - (second - first)];
+	int length = 0;
+	for(int i = 0; i < pPath.length - 1; ++i) {
+	    newCycle[length++] = piece.label(pPath[i]);
+	}
+	for(int i = second; i < cycle.length; ++i) {
+	    newCycle[length++] = cycle[i];
+	}
+	for(int i = 0; i < first; ++i) {
+	    newCycle[length++] = cycle[i];
+	}
+
+	// Add cycle to piece
+	EdgeList edges = new EdgeList(piece.numberOfEdges() + cycle.length);
+	for(int v = 0; v < piece.numberOfVertices(); ++v) {
+	    for(int k = piece.edgeStart(v); k < piece.edgeEnd(v); ++k) {
+		if(v < piece.target(k)) {
+		    edges.addEdge(piece.label(v), piece.label(piece.target(k)));
+		}
+	    }
+	}
+	for(int i = 0; i < cycle.length; ++i) {
+	    edges.addEdge(cycle[i], cycle[(i+1) % cycle.length]);
+	}
+	CSRGraph subgraph = edges.toCSRGraph();
+	for(int i = 0; i < newCycle.length; ++i) {
+	    newCycle[i] = subgraph.indexOf(newCycle[i]);
+	}
+
+	return new Subproblem(subgraph, newCycle);
+    }
+
+    /**
+     * Builds the recursive step for a non-path piece as ForPiece does,
+     * but as a view of the decomposed graph: the path is found among the
+     * edges of the piece, and then the cycle's edges are moved to the
+     * piece's view.  Nothing is copied but the new cycle.
+     *
+     * @param pieces	The decomposition the piece belongs to
+     * @param piece	The number of the piece
+     * @return		The next subproblem
+     */
+    public static Subproblem ForPiece(PieceDecomposition pieces, int piece) {
+	int[] cycle = pieces.cycle();
+	int[] positions = pieces.attachments(piece);
+
+	// Get two consecutive attachments
+	int first = positions[0];
+	int second = positions[1];
+	int[] otherAttach = new int[positions.length - 2];
+	for(int i = 2; i < positions.length; ++i) {
+	    otherAttach[i-2] = cycle[positions[i]];
+	}
+
+	//Find path between consecutive attachments through piece
+	int[] pPath = Traversal.ForCurrentThread().findPath(
+	    pieces.piece(piece), cycle[first], cycle[second], otherAttach,
+	    otherAttach.length);
+
+	int[] newCycle =
+	    new int[pPath.length - 1 + cycle.length - (second - first)];
+	int length = 0;
+	for(int i = 0; i < pPath.length - 1; ++i) {
+	    newCycle[length++] = pPath[i];
+	}
+	for(int i = second; i < cycle.length; ++i) {
+	    newCycle[length++] = cycle[i];
+	}
+	for(int i = 0; i < first; ++i) {
+	    newCycle[length++] = cycle[i];
+	}
+
+	return new Subproblem(pieces.withCycle(piece), newCycle);
+    }
+}
@@ -8,15 +8,14 @@
  *      $Log$
  */
 
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class is responsible for running the planarity testing algorithm, using the
@@ -26,78 +25,381 @@ import java.util.Set;
  */
 public class TestPlanarity {
 
+    /**
+     * The planarity engines that can be chosen with -engine.
+     */
+    public enum Engine {
+	/** The recursive cycle/pieces/interlacement method (PlanarityTesting). */
+	PIECES,
+	/** The same method with the pieces tested on a fork/join pool. */
+	PARALLEL_PIECES,
+	/** The linear-time left-right test (LRPlanarity). */
+	LEFT_RIGHT
+    }
+
     /**
      * The main planarity testing algorithm.
      * 
-     * @param args	The filename containing the graph information
+     * @param args	[-engine pieces|parallel|lr] [-threshold edges]
+     * 			[-load mmap|parallel] [-kernel off|input|pieces]
+     * 			[-labels int|long|name] [-cachefile file]
+     * 			[-embedding] [-certificate] [-v] and the filename
+     * 			containing
+     * 			the graph information, either a text edge list or a
+     * 			BinaryGraphFormat file.  By default the graph is
+     * 			reduced with Kernel before it is tested; with -v, or
+     * 			if PlanarityMetrics are enabled, how much it shrank
+     * 			is printed to standard error.  pieces also reduces
+     * 			every block and every forked piece.
+     * 			The vertices of a text edge list are ints unless
+     * 			-labels says they are longs or names, which are
+     * 			interned with a VertexInterner.  With -cachefile
+     * 			the result is looked up in, and then kept in, a
+     * 			ResultCache file shared by all the runs.  If
+     * 			PlanarityMetrics are enabled, their summary is
+     * 			printed to standard error after the test.  With
+     * 			-embedding a planar graph is embedded by the
+     * 			left-right engine, unreduced and uncached, so
+     * 			-engine, -kernel and -cachefile cannot be given with
+     * 			it, and the rotation of every vertex is printed
+     * 			after the answer; it is checked with
+     * 			PlanarEmbedding.Verify, and the faces counted are
+     * 			printed to standard error.  With -certificate the
+     * 			edges of a KuratowskiSubgraph of a nonplanar graph
+     * 			are printed after the answer in the same way, and
+     * 			checked with KuratowskiSubgraph.Verify; it takes the
+     * 			same options as -embedding.
      */
     public static void main(String[] args) {
+	Engine engine = Engine.PIECES;
+	int threshold = ParallelPlanarity.DEFAULT_THRESHOLD;
+	boolean parallelLoad = false;
+	String kernel = "input";
+	String labels = "int";
+	String cacheFile = null;
+	boolean embed = false;
+	boolean certify = false;
+	boolean verbose = false;
+	String testOption = null;
+	String filename = null;
+
 	try {
-	    BufferedReader inputStream = 
-	        new BufferedReader(new FileReader(args[0]));
-	    String line;
-            Graph graph = new Graph();
-			
+	    for(int i = 0; i < args.length; ++i) {
+		if(args[i].equals("-engine") && i + 1 < args.length) {
+		    testOption = args[i];
+		    engine = ParseEngine(args[++i]);
+		} else if(args[i].equals("-threshold") && i + 1 < args.length) {
+		    threshold = Integer.parseInt(args[++i]);
+		} else if(args[i].equals("-load") && i + 1 < args.length) {
+		    parallelLoad = args[++i].equals("parallel");
+		} else if(args[i].equals("-kernel") && i + 1 < args.length) {
+		    testOption = args[i];
+		    kernel = args[++i];
+		} else if(args[i].equals("-labels") && i + 1 < args.length) {
+		    labels = args[++i];
+		} else if(args[i].equals("-cachefile") && i + 1 < args.length) {
+		    testOption = args[i];
+		    cacheFile = args[++i];
+		} else if(args[i].equals("-embedding")) {
+		    embed = true;
+		} else if(args[i].equals("-certificate")) {
+		    certify = true;
+		} else if(args[i].equals("-v")) {
+		    verbose = true;
+		} else {
+		    filename = args[i];
+		}
+	    }
+	    if(filename == null) {
+		throw new Exception(
+		    "Usage: java TestPlanarity [-engine pieces|parallel|lr]"
+		    + " [-threshold edges] [-load mmap|parallel]"
+		    + " [-kernel off|input|pieces] [-labels int|long|name]"
+		    + " [-cachefile file] [-embedding] [-certificate] [-v]"
+		    + " filename");
+	    }
+	    if((embed || certify) && testOption != null) {
+		throw new Exception((embed ? "-embedding" : "-certificate")
+				    + " always uses the left-right"
+				    + " engine on the whole graph, so it"
+				    + " cannot be given with " + testOption);
+	    }
+	    VertexInterner interner = ParseLabels(labels);
+
 	    // Read graph info from file and construct graph.
-	    while((line = inputStream.readLine()) != null) {
-		String[] vertices = line.split(" ");
-				
-		try {
-		    graph.addEdge(Integer.parseInt(vertices[0]), 
-			Integer.parseInt(vertices[1]));
-		} catch(NumberFormatException ex) { 
-                    break; 
-                }
+	    CSRGraph graph;
+	    if(BinaryGraphFormat.IsBinaryFile(filename)) {
+		graph = BinaryGraphFormat.Read(filename);
+	    } else {
+		EdgeList edges = parallelLoad
+		    ? EdgeListLoader.LoadParallel(filename,
+						  ForkJoinPool.commonPool(),
+						  interner)
+		    : interner != null
+		    ? EdgeListLoader.Load(filename, interner)
+		    : EdgeListLoader.Load(filename);
+		graph = edges.toCSRGraph();
 	    }
-			
-	    boolean done = false;
-			
-	    for(Integer vertex : graph.getVertices()) {
-		// Find a cycle and compute its pieces.
-		// If more than 1 piece, continue (separating cycle)
-		List<Integer> cycle = GraphUtilities.FindCycle(graph, vertex);
-				
-		Graph copy = new Graph(graph);
-				
-		if(cycle == null) {
-		    throw new Exception("Not biconnected.");
+
+	    if(embed || certify) {
+		PlanarEmbedding embedding = embed ? PlanarEmbedding.Of(graph)
+		    : null;
+		boolean planar = embed ? embedding != null
+		    : LRPlanarity.IsPlanar(graph);
+		System.out.println(planar ? "planar" : "nonplanar");
+		if(embedding != null) {
+		    System.out.print(embedding.format(interner));
+		    System.err.println("embedding: " +
+				       embedding.numberOfFaces() + " faces, " +
+				       (PlanarEmbedding.Verify(
+					   graph, embedding.rotation())
+					? "verified" : "NOT verified"));
 		}
-				
-		List<Graph> pieces = GraphUtilities.FindPieces(copy, cycle);
-
-		if(pieces.size() > 0) {
-					
-		    // Check to see if there are more than 3n-6 edges
-		    if((3 * graph.numberOfVertices() - 6) < graph.numberOfEdges()) {
-			System.out.println("nonplanar");
-			done = true;
-			break;
-		    }
-					
-		    boolean planar = PlanarityTesting(graph, cycle);
-		    if(planar) {
-			System.out.println("planar");
-		    } else {
-			System.out.println("nonplanar");
-		    }
-		    done = true;
-		    break;
+		if(!planar && certify) {
+		    KuratowskiSubgraph witness =
+			KuratowskiSubgraph.Find(graph);
+		    System.out.print(witness.format(graph, interner));
+		    System.err.println("certificate: " + witness + ", " +
+				       (KuratowskiSubgraph.Verify(
+					   graph, witness.edges())
+					? "verified" : "NOT verified"));
 		}
+		return;
 	    }
-			
-	    // In case of K3 which has no separating cycle but is biconnected
-	    // Also necessary for any cycle
-	    if(!done) {
-		System.out.println("planar");
+
+	    // Answer from the cache if this graph has been seen before.
+	    ResultCache cache = null;
+	    GraphFingerprint fingerprint = null;
+	    Boolean known = null;
+	    if(cacheFile != null) {
+		cache = new ResultCache(1, true, cacheFile);
+		fingerprint = GraphFingerprint.Of(graph, true);
+		known = cache.get(fingerprint);
+	    }
+	    if(known != null) {
+		System.out.println(known ? "planar" : "nonplanar");
+		return;
+	    }
+
+	    if(!kernel.equals("off")) {
+		Kernel reduced = Kernel.Reduce(graph);
+		if(verbose || PlanarityMetrics.ENABLED) {
+		    System.err.println(reduced);
+		}
+		graph = reduced.graph();
+	    }
+
+	    boolean planar =
+		IsPlanar(graph, engine, threshold, kernel.equals("pieces"));
+	    if(cache != null) {
+		cache.put(fingerprint, planar);
+		cache.close();
+	    }
+	    System.out.println(planar ? "planar" : "nonplanar");
+	    if(PlanarityMetrics.ENABLED) {
+		System.err.print(PlanarityMetrics.Summary());
 	    }
 			
 	} catch(FileNotFoundException ex) {
-       	    System.err.println("Filename: " + args[0] + " not found");
+       	    System.err.println("Filename: " + filename + " not found");
 	} catch(IOException ex) {
-	    System.err.println("I/O exception in reading file.");
+	    System.err.println(filename + ": " + ex.getMessage());
 	} catch(Exception ex) {
 	    System.err.println(ex.getMessage());
-        }
+	} catch(StackOverflowError ex) {
+	    System.err.println(filename + ": graph too deep for the stack");
+	} catch(OutOfMemoryError ex) {
+	    System.err.println(filename + ": out of memory");
+	}
+    }
+
+    /**
+     * Parses the name of an engine given on the command line.
+     * 
+     * @param name	"pieces", "parallel" or "lr"
+     * @return		The engine
+     */
+    public static Engine ParseEngine(String name) {
+	if(name.equals("pieces")) {
+	    return Engine.PIECES;
+	} else if(name.equals("parallel")) {
+	    return Engine.PARALLEL_PIECES;
+	} else if(name.equals("lr")) {
+	    return Engine.LEFT_RIGHT;
+	}
+	throw new IllegalArgumentException("Unknown engine: " + name);
+    }
+
+    /**
+     * Parses the kind of vertex labels given on the command line.
+     * 
+     * @param name	"int", "long" or "name"
+     * @return		An interner for the labels, or null for ints
+     */
+    public static VertexInterner ParseLabels(String name) {
+	if(name.equals("int")) {
+	    return null;
+	} else if(name.equals("long")) {
+	    return VertexInterner.ForLongs();
+	} else if(name.equals("name")) {
+	    return VertexInterner.ForNames();
+	}
+	throw new IllegalArgumentException("Unknown labels: " + name);
+    }
+
+    /**
+     * Tests a graph for planarity with the given engine, using the default
+     * threshold for the parallel engine.
+     * 
+     * @param graph	The given graph
+     * @param engine	The engine to use
+     * @return		True if planar, false otherwise
+     */
+    public static boolean IsPlanar(CSRGraph graph, Engine engine) {
+	return IsPlanar(graph, engine, ParallelPlanarity.DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Tests a graph for planarity with the given engine.  Any graph is
+     * accepted.  The left-right engine takes the graph as it is; for the
+     * pieces engines the graph is first split into its biconnected
+     * components, which are tested independently on the common pool.
+     * 
+     * @param graph	The given graph
+     * @param engine	The engine to use
+     * @param threshold	The number of edges below which the parallel
+     * 			engine solves a subproblem sequentially
+     * @return		True if planar, false otherwise
+     */
+    public static boolean IsPlanar(CSRGraph graph, Engine engine,
+				   int threshold) {
+	return IsPlanar(graph, engine, threshold, false);
+    }
+
+    /**
+     * Tests a graph for planarity with the given engine, optionally
+     * reducing every block, and for the parallel engine every forked
+     * piece, with Kernel first.  The left-right engine is not affected.
+     * 
+     * @param graph	The given graph
+     * @param engine	The engine to use
+     * @param threshold	The number of edges below which the parallel
+     * 			engine solves a subproblem sequentially
+     * @param reducePieces	Whether to reduce the blocks and pieces
+     * @return		True if planar, false otherwise
+     */
+    public static boolean IsPlanar(CSRGraph graph, Engine engine,
+				   int threshold, boolean reducePieces) {
+	if(engine == Engine.LEFT_RIGHT) {
+	    return LRPlanarity.IsPlanar(graph);
+	} else if(engine == Engine.PARALLEL_PIECES) {
+	    return ParallelPlanarity.IsPlanar(graph, threshold,
+					      ForkJoinPool.commonPool(),
+					      reducePieces);
+	}
+
+	// Check to see if there are more than 3n-6 edges
+	if(graph.numberOfVertices() > 2 &&
+	   (3 * graph.numberOfVertices() - 6) < graph.numberOfEdges()) {
+	    return false;
+	}
+	return ParallelPlanarity.TestBlocks(
+	    GraphUtilities.BiconnectedComponents(graph, 9), false,
+	    reducePieces, threshold, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Tests a biconnected graph for planarity with the pieces engine.
+     * Graphs that BitsetGraph suits are tested on their adjacency matrix.
+     * 
+     * @param graph	The given graph
+     * @return		True if planar, false otherwise
+     */
+    public static boolean IsBlockPlanar(CSRGraph graph) {
+	return IsBlockPlanar(graph, true);
+    }
+
+    /**
+     * Tests a biconnected graph for planarity with the pieces engine,
+     * using the bitset engine for the graphs it suits only if allowed, so
+     * that the two can be checked against each other.
+     * 
+     * @param graph		The given graph
+     * @param allowBitset	Whether BitsetGraph may test the graph
+     * @return			True if planar, false otherwise
+     */
+    public static boolean IsBlockPlanar(CSRGraph graph,
+					boolean allowBitset) {
+	if(allowBitset && BitsetGraph.Suits(graph)) {
+	    return new BitsetGraph(graph).isPlanar();
+	}
+
+	int[] cycle = FindSeparatingCycle(graph);
+
+	// In case of K3 which has no separating cycle but is biconnected
+	// Also necessary for any cycle
+	if(cycle == null) {
+	    return true;
+	}
+
+	// Check to see if there are more than 3n-6 edges
+	if((3 * graph.numberOfVertices() - 6) < graph.numberOfEdges()) {
+	    return false;
+	}
+	return PlanarityTesting(graph, cycle);
+    }
+
+    /**
+     * The number of back-edge cycles FindSeparatingCycle chooses from.
+     */
+    static final int CYCLE_CANDIDATES = 4;
+
+    /**
+     * Finds a cycle that has at least one piece, to start the recursion
+     * with.  Returns null if there is none, which for a biconnected graph
+     * means the graph is a single cycle: in any other biconnected graph
+     * some edge is off any given cycle, so every cycle has a piece.
+     *
+     * One depth-first search gives the longest cycles closed by a single
+     * back edge, and of those the one whose largest piece has the fewest
+     * edges is taken, so the first level splits the graph as evenly as
+     * it can and the largest subproblem below it stays small.
+     * 
+     * @param graph	The given graph, which must be biconnected
+     * @return		The cycle, or null
+     */
+    public static int[] FindSeparatingCycle(CSRGraph graph) {
+	PlanarityMetrics.Span span = PlanarityMetrics.ENABLED ?
+	    PlanarityMetrics.Begin(PlanarityMetrics.Phase.CYCLE, -1) : null;
+	int[][] candidates = Traversal.ForCurrentThread().longestCycles(
+	    graph, CYCLE_CANDIDATES);
+	if(candidates.length == 0) {
+	    throw new IllegalArgumentException("Not biconnected.");
+	}
+	if(graph.numberOfEdges() <= graph.numberOfVertices()) {
+	    if(span != null) {
+		span.end(graph.numberOfEdges());
+	    }
+	    return null;
+	}
+
+	int[] best = null;
+	int bestLargest = Integer.MAX_VALUE;
+	for(int[] cycle : candidates) {
+	    PieceDecomposition pieces = PieceDecomposition.Of(graph, cycle);
+	    int largest = 0;
+	    for(int piece = 0; piece < pieces.numberOfPieces(); ++piece) {
+		largest = Math.max(largest, pieces.numberOfEdges(piece));
+	    }
+	    if(largest < bestLargest) {
+		best = cycle;
+		bestLargest = largest;
+	    }
+	}
+	if(span != null) {
+	    span.end(graph.numberOfEdges());
+	}
+	return best;
     }
 	
     /**
@@ -115,8 +417,7 @@ public class TestPlanarity {
 	    return false;
 	}
 		
-	Graph copy = new Graph(graph);
-        List<Graph> pieces = GraphUtilities.FindPieces(copy, cycle);
+        List<Graph> pieces = GraphUtilities.FindPieces(graph, cycle);
 		
 	// Deep copy the pieces list due to Java's handling of references
 	List<Graph> piecesCopy = new LinkedList<Graph>();
@@ -186,4 +487,18 @@ public class TestPlanarity {
 	return true;
     }
 
+    /**
+     * The CSR version of the planarity testing algorithm.  It follows the
+     * same steps as the Graph version on SubgraphViews of the graph, with
+     * the pending pieces kept on a heap stack by PlanarityDriver instead
+     * of on the call stack.
+     * 
+     * @param graph	The given graph
+     * @param cycle The vertices of the given cycle, in order
+     * @return	True if planar, false otherwise
+     */
+    public static boolean PlanarityTesting(CSRGraph graph, int[] cycle) {
+	return PlanarityDriver.Test(SubgraphView.Whole(graph), cycle, null);
+    }
+
 }
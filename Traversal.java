@@ -0,0 +1,328 @@
+/*
+ * Traversal.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.util.Arrays;
+
+/**
+ * This class is the workspace of the depth-first searches behind the CSR
+ * versions of FindCycle and FindPath.  It keeps the stack, the parents
+ * and the explored marks in int arrays that only ever grow, and it does
+ * not clear them between searches: every search takes a new epoch number
+ * and a vertex counts as explored only if its mark equals the current
+ * epoch.  Starting a search therefore costs nothing, however large the
+ * arrays have become, and a search touches only the part of the graph it
+ * explores.
+ *
+ * A workspace is not thread-safe.  ForCurrentThread hands every thread
+ * its own, which is then reused by all the searches that thread runs, at
+ * every level of the recursion.  A thread that lives for one request
+ * only, as in PlanarityServer, can be lent a pooled workspace with Use
+ * instead, so that the arrays grown by one request serve the next.
+ *
+ * @author Matthew McCarty
+ */
+
+public final class Traversal {
+    private static final ThreadLocal<Traversal> CURRENT =
+	new ThreadLocal<Traversal>() {
+	    protected Traversal initialValue() {
+		return new Traversal();
+	    }
+	};
+
+    private int[] stack = new int[16];
+    private int[] parent = new int[16];
+    private int[] explored = new int[16];
+    private int[] avoided = new int[16];
+    private int[] depth = new int[16];
+    private int[] next = new int[16];
+    private int epoch;
+
+    /**
+     * Returns the workspace of the calling thread.
+     *
+     * @return	The workspace
+     */
+    public static Traversal ForCurrentThread() {
+	return CURRENT.get();
+    }
+
+    /**
+     * Makes the given workspace the one ForCurrentThread returns on the
+     * calling thread, or goes back to a fresh one for null.
+     *
+     * @param workspace	The workspace, which no other thread may be using
+     */
+    public static void Use(Traversal workspace) {
+	if(workspace == null) {
+	    CURRENT.remove();
+	} else {
+	    CURRENT.set(workspace);
+	}
+    }
+
+    /**
+     * Finds a cycle through the given vertex, with the same depth-first
+     * search as GraphUtilities.FindCycle.
+     *
+     * @param graph	The given graph
+     * @param vertex	The start vertex for the cycle
+     * @return		The vertices of the cycle in order, or null if no
+     * 			cycle was found
+     */
+    public int[] findCycle(CSRGraph graph, int vertex) {
+	begin(graph);
+	int top = 0;
+	int exploredCount = 0;
+
+	stack[top++] = vertex;
+
+	// Run DFS.
+	while(top > 0) {
+	    int currentVertex = stack[--top];
+	    if(explored[currentVertex] != epoch) {
+		explored[currentVertex] = epoch;
+		++exploredCount;
+		for(int i = graph.edgeStart(currentVertex);
+		    i < graph.edgeEnd(currentVertex); ++i) {
+		    int adjVertex = graph.target(i);
+		    stack[top++] = adjVertex;
+
+		    if(explored[adjVertex] != epoch || adjVertex == vertex) {
+			parent[adjVertex] = currentVertex;
+		    }
+
+		    // If we return to the start vertex, return.
+		    // The cycle length must be greater than 2.
+		    if(adjVertex == vertex && exploredCount > 2) {
+			return pathFromParents(vertex, vertex);
+		    }
+		}
+	    }
+	}
+
+	return null;
+    }
+
+    /**
+     * Finds a path between two vertices that goes through none of the
+     * given vertices, with the same depth-first search as
+     * GraphUtilities.FindPath.
+     *
+     * @param graph	The graph containing the two vertices
+     * @param vertex1	The first vertex
+     * @param vertex2	The second vertex
+     * @param avoid	The vertices the path must not go through
+     * @param avoidCount	The number of entries of avoid to use
+     * @return		The path of vertices, starting with vertex1, or null
+     * 			if there is none
+     */
+    public int[] findPath(CSRGraph graph, int vertex1, int vertex2,
+			  int[] avoid, int avoidCount) {
+	return findPath(graph, null, vertex1, vertex2, avoid, avoidCount);
+    }
+
+    /**
+     * Finds a path between two vertices of a view that uses only the
+     * edges of the view and goes through none of the given vertices.
+     *
+     * @param view	The view containing the two vertices
+     * @param vertex1	The first vertex, as a vertex of the whole graph
+     * @param vertex2	The second vertex
+     * @param avoid	The vertices the path must not go through
+     * @param avoidCount	The number of entries of avoid to use
+     * @return		The path of vertices of the whole graph, starting
+     * 			with vertex1, or null if there is none
+     */
+    public int[] findPath(SubgraphView view, int vertex1, int vertex2,
+			  int[] avoid, int avoidCount) {
+	return findPath(view.graph(), view, vertex1, vertex2, avoid,
+			avoidCount);
+    }
+
+    /**
+     * The search behind both versions of findPath; a null view stands for
+     * the whole graph.
+     */
+    private int[] findPath(CSRGraph graph, SubgraphView view, int vertex1,
+			   int vertex2, int[] avoid, int avoidCount) {
+	begin(graph);
+	for(int i = 0; i < avoidCount; ++i) {
+	    avoided[avoid[i]] = epoch;
+	}
+	int top = 0;
+
+	stack[top++] = vertex1;
+
+	// Run DFS.
+	while(top > 0) {
+	    int currentVertex = stack[--top];
+	    if(explored[currentVertex] != epoch &&
+	       avoided[currentVertex] != epoch) {
+		explored[currentVertex] = epoch;
+		for(int i = graph.edgeStart(currentVertex);
+		    i < graph.edgeEnd(currentVertex); ++i) {
+		    if(view != null && !view.contains(i)) {
+			continue;
+		    }
+		    int adjVertex = graph.target(i);
+		    stack[top++] = adjVertex;
+
+		    if(explored[adjVertex] != epoch &&
+		       avoided[adjVertex] != epoch) {
+			parent[adjVertex] = currentVertex;
+		    }
+
+		    // If we find the last vertex, return
+		    if(adjVertex == vertex2) {
+			int[] path = pathFromParents(vertex2, vertex1);
+			for(int a = 0, b = path.length - 1; a < b; ++a, --b) {
+			    int tmp = path[a];
+			    path[a] = path[b];
+			    path[b] = tmp;
+			}
+			return path;
+		    }
+		}
+	    }
+	}
+
+	// If no path found, return null
+	return null;
+    }
+
+    /**
+     * Finds the longest cycles that a single depth-first search closes
+     * with one back edge each: a back edge from v up to an ancestor w
+     * closes the cycle of the tree path from w down to v, whose length is
+     * the difference in depth plus one.
+     *
+     * @param graph	The given graph
+     * @param count	The most cycles to return
+     * @return		The cycles, longest first, each as its vertices in
+     * 			order from the ancestor down; empty if the graph has
+     * 			no cycle
+     */
+    public int[][] longestCycles(CSRGraph graph, int count) {
+	begin(graph);
+	int[] bottom = new int[count];
+	int[] top = new int[count];
+	int found = 0;
+
+	for(int root = 0; root < graph.numberOfVertices(); ++root) {
+	    if(explored[root] == epoch) {
+		continue;
+	    }
+	    explored[root] = epoch;
+	    depth[root] = 0;
+	    parent[root] = -1;
+	    next[root] = graph.edgeStart(root);
+	    int size = 0;
+	    stack[size++] = root;
+
+	    // Run DFS.
+	    while(size > 0) {
+		int v = stack[size-1];
+		if(next[v] == graph.edgeEnd(v)) {
+		    --size;
+		    continue;
+		}
+		int w = graph.target(next[v]++);
+		if(explored[w] != epoch) {
+		    explored[w] = epoch;
+		    depth[w] = depth[v] + 1;
+		    parent[w] = v;
+		    next[w] = graph.edgeStart(w);
+		    stack[size++] = w;
+		} else if(w != parent[v] && depth[w] < depth[v]) {
+		    // A back edge; keep it if it is among the longest.
+		    int length = depth[v] - depth[w];
+		    int i = Math.min(found, count - 1);
+		    if(found == count &&
+		       depth[bottom[i]] - depth[top[i]] >= length) {
+			continue;
+		    }
+		    for(; i > 0 &&
+			    depth[bottom[i-1]] - depth[top[i-1]] < length; --i) {
+			bottom[i] = bottom[i-1];
+			top[i] = top[i-1];
+		    }
+		    bottom[i] = v;
+		    top[i] = w;
+		    found = Math.min(found + 1, count);
+		}
+	    }
+	}
+
+	int[][] cycles = new int[found][];
+	for(int i = 0; i < found; ++i) {
+	    int[] cycle = new int[depth[bottom[i]] - depth[top[i]] + 1];
+	    int vertex = bottom[i];
+	    for(int j = cycle.length - 1; j >= 0; --j) {
+		cycle[j] = vertex;
+		vertex = parent[vertex];
+	    }
+	    cycles[i] = cycle;
+	}
+	return cycles;
+    }
+
+    /**
+     * Starts a new search of the given graph: makes room for it and moves
+     * to the next epoch.
+     */
+    private void begin(CSRGraph graph) {
+	int n = graph.numberOfVertices();
+	if(explored.length < n) {
+	    int capacity = Math.max(n, 2 * explored.length);
+	    parent = new int[capacity];
+	    explored = new int[capacity];
+	    avoided = new int[capacity];
+	    depth = new int[capacity];
+	    next = new int[capacity];
+	    epoch = 0;
+	}
+	// Every vertex is pushed once per incident edge, and the start once.
+	if(stack.length < 2 * graph.numberOfEdges() + 1) {
+	    stack = new int[Math.max(2 * graph.numberOfEdges() + 1,
+				     2 * stack.length)];
+	}
+	if(++epoch == Integer.MAX_VALUE) {
+	    Arrays.fill(explored, 0);
+	    Arrays.fill(avoided, 0);
+	    epoch = 1;
+	}
+    }
+
+    /**
+     * Walks the parents from the given vertex until the stop vertex is
+     * reached.  The stop vertex is the last entry, unless it is the same
+     * as the start vertex, in which case the walk describes a cycle and
+     * the start vertex only appears once.
+     */
+    private int[] pathFromParents(int start, int stop) {
+	int length = 1;
+	for(int current = parent[start]; current != stop;
+	    current = parent[current]) {
+	    ++length;
+	}
+	if(start != stop) {
+	    ++length;
+	}
+
+	int[] path = new int[length];
+	int current = start;
+	for(int i = 0; i < length; ++i) {
+	    path[i] = current;
+	    current = parent[current];
+	}
+	return path;
+    }
+}
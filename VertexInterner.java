@@ -0,0 +1,302 @@
+/*
+ * VertexInterner.java
+ *
+ * Version:
+ *     $Id$
+ *
+ * Revisions:
+ *     $Log$
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This class hands out the dense ids 0 to n-1 to the vertex labels of a
+ * file, in the order the labels first appear, so that labels that are
+ * not ints, such as 64-bit ids or names, can still be loaded into an
+ * EdgeList and a CSRGraph.  The graph is then labelled with the ids, and
+ * label turns an id back into the label it stands for, so that cycles
+ * and certificates can be reported the way the file wrote them.
+ *
+ * An interner holds either longs or names.  Both are kept in an
+ * open-addressing table of ints with linear probing, at most half full,
+ * whose slots hold an id plus one; the longs are kept in a long array by
+ * id and the names as UTF-8 bytes one after another in a single byte
+ * array, so that interning a name straight from a mapped file makes no
+ * String.  An interner is not thread-safe.
+ *
+ * @author Matthew McCarty
+ */
+
+public final class VertexInterner {
+    private final boolean names;
+    private int[] slots = new int[16];
+    private int size;
+
+    // The labels, by id.
+    private long[] keys = new long[8];
+    private int[] hashes = new int[8];
+    private int[] nameStart = new int[9];
+    private byte[] nameBytes = new byte[64];
+
+    private VertexInterner(boolean names) {
+	this.names = names;
+    }
+
+    /**
+     * Creates an interner for labels that are longs.
+     *
+     * @return	The interner
+     */
+    public static VertexInterner ForLongs() {
+	return new VertexInterner(false);
+    }
+
+    /**
+     * Creates an interner for labels that are names.
+     *
+     * @return	The interner
+     */
+    public static VertexInterner ForNames() {
+	return new VertexInterner(true);
+    }
+
+    /**
+     * Creates an empty interner that holds the same kind of labels as
+     * this one.
+     *
+     * @return	The interner
+     */
+    public VertexInterner newEmpty() {
+	return new VertexInterner(names);
+    }
+
+    /**
+     * Determines whether this interner holds names rather than longs.
+     *
+     * @return	True for names
+     */
+    public boolean holdsNames() {
+	return names;
+    }
+
+    /**
+     * Returns the number of labels interned so far.
+     *
+     * @return	The number of labels
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * Returns the id of a long label, giving it the next id if it is new.
+     *
+     * @param label	The label
+     * @return		Its id
+     */
+    public int intern(long label) {
+	if(names) {
+	    throw new IllegalStateException("This interner holds names.");
+	}
+	int hash = Mix(label);
+	int mask = slots.length - 1;
+	for(int slot = hash & mask; ; slot = (slot + 1) & mask) {
+	    int id = slots[slot] - 1;
+	    if(id < 0) {
+		id = add(slot, hash);
+		keys[id] = label;
+		return id;
+	    }
+	    if(keys[id] == label) {
+		return id;
+	    }
+	}
+    }
+
+    /**
+     * Returns the id of a name, giving it the next id if it is new.
+     *
+     * @param label	The name
+     * @return		Its id
+     */
+    public int intern(String label) {
+	byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+	return intern(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /**
+     * Returns the id of the name held by the bytes between start and end
+     * of a buffer, giving it the next id if it is new.
+     *
+     * @param buffer	The buffer holding the name in UTF-8
+     * @param start	The index of its first byte
+     * @param end	The index after its last byte
+     * @return		Its id
+     */
+    public int intern(ByteBuffer buffer, int start, int end) {
+	if(!names) {
+	    throw new IllegalStateException("This interner holds longs.");
+	}
+	int hash = 0x811c9dc5;
+	for(int i = start; i < end; ++i) {
+	    hash = (hash ^ (buffer.get(i) & 0xff)) * 0x01000193;
+	}
+	hash = Mix(hash);
+	int mask = slots.length - 1;
+	for(int slot = hash & mask; ; slot = (slot + 1) & mask) {
+	    int id = slots[slot] - 1;
+	    if(id < 0) {
+		id = add(slot, hash);
+		int length = end - start;
+		int from = nameStart[id];
+		if(from + length > nameBytes.length) {
+		    nameBytes = Arrays.copyOf(nameBytes,
+					      Math.max(from + length,
+						       2 * nameBytes.length));
+		}
+		for(int i = 0; i < length; ++i) {
+		    nameBytes[from + i] = buffer.get(start + i);
+		}
+		nameStart[id + 1] = from + length;
+		return id;
+	    }
+	    if(hashes[id] == hash && sameName(id, buffer, start, end)) {
+		return id;
+	    }
+	}
+    }
+
+    /**
+     * Returns the id in this interner of a label of another interner of
+     * the same kind, giving it the next id if it is new.  This is how the
+     * ids of labels interned separately, by the chunks of a file say, are
+     * brought together.
+     *
+     * @param other	The other interner
+     * @param id	The id of the label there
+     * @return		Its id here
+     */
+    public int intern(VertexInterner other, int id) {
+	if(names) {
+	    return intern(ByteBuffer.wrap(other.nameBytes),
+			  other.nameStart[id], other.nameStart[id + 1]);
+	}
+	return intern(other.keys[id]);
+    }
+
+    /**
+     * Returns the long label with the given id.
+     *
+     * @param id	The id
+     * @return		Its label
+     */
+    public long longLabel(int id) {
+	if(names) {
+	    throw new IllegalStateException("This interner holds names.");
+	}
+	return keys[id];
+    }
+
+    /**
+     * Returns the label with the given id as it was written.
+     *
+     * @param id	The id
+     * @return		Its label
+     */
+    public String label(int id) {
+	if(names) {
+	    return new String(nameBytes, nameStart[id],
+			      nameStart[id + 1] - nameStart[id],
+			      StandardCharsets.UTF_8);
+	}
+	return Long.toString(keys[id]);
+    }
+
+    /**
+     * Writes vertices of a graph labelled with the ids of this interner,
+     * a cycle or a path say, with the labels they stand for.
+     *
+     * @param graph	The graph
+     * @param vertices	The vertices
+     * @return		Their labels, separated by spaces
+     */
+    public String format(CSRGraph graph, int[] vertices) {
+	StringBuilder text = new StringBuilder();
+	for(int i = 0; i < vertices.length; ++i) {
+	    if(i > 0) {
+		text.append(' ');
+	    }
+	    text.append(label(graph.label(vertices[i])));
+	}
+	return text.toString();
+    }
+
+    /**
+     * Gives the next id to a new label that hashes to the given empty
+     * slot, growing the arrays by id first and the table afterwards if
+     * it has become more than half full.
+     */
+    private int add(int slot, int hash) {
+	int id = size++;
+	if(id == keys.length) {
+	    int capacity = 2 * keys.length;
+	    keys = Arrays.copyOf(keys, capacity);
+	    hashes = Arrays.copyOf(hashes, capacity);
+	    nameStart = Arrays.copyOf(nameStart, capacity + 1);
+	}
+	hashes[id] = hash;
+	slots[slot] = id + 1;
+	if(2 * size > slots.length) {
+	    rehash();
+	}
+	return id;
+    }
+
+    /**
+     * Doubles the table and puts every id back in it.
+     */
+    private void rehash() {
+	slots = new int[2 * slots.length];
+	int mask = slots.length - 1;
+	for(int id = 0; id < size; ++id) {
+	    int slot = hashes[id] & mask;
+	    while(slots[slot] != 0) {
+		slot = (slot + 1) & mask;
+	    }
+	    slots[slot] = id + 1;
+	}
+    }
+
+    /**
+     * Compares the name with the given id to the bytes of a buffer.
+     */
+    private boolean sameName(int id, ByteBuffer buffer, int start, int end) {
+	int from = nameStart[id];
+	if(nameStart[id + 1] - from != end - start) {
+	    return false;
+	}
+	for(int i = start; i < end; ++i) {
+	    if(nameBytes[from + i - start] != buffer.get(i)) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Spreads the bits of a long over an int, so that labels that differ
+     * only in their high bits, or by a multiple of the table size, do not
+     * fall into one run of slots.
+     */
+    private static int Mix(long value) {
+	value ^= value >>> 33;
+	value *= 0xff51afd7ed558ccdL;
+	value ^= value >>> 33;
+	value *= 0xc4ceb9fe1a85ec53L;
+	value ^= value >>> 33;
+	return (int) value;
+    }
+}